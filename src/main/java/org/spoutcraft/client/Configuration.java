@@ -0,0 +1,119 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+
+/**
+ * The game configuration, read from a YAML file. Values are looked up by path, the keys of the nested sections being separated by dots (e.g. "graphics.shadows.enabled"). Missing or invalid values
+ * are replaced by the provided defaults.
+ */
+public class Configuration {
+    private final Map<?, ?> root;
+
+    /**
+     * Constructs a new empty configuration, for which all the defaults will be used.
+     */
+    public Configuration() {
+        this(Collections.emptyMap());
+    }
+
+    private Configuration(Map<?, ?> root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns the integer value at the path, or the default if it's missing or not an integer.
+     *
+     * @param path The path of the value
+     * @param def The default value
+     * @return The value
+     */
+    public int getInt(String path, int def) {
+        final Object value = get(path);
+        return value instanceof Number ? ((Number) value).intValue() : def;
+    }
+
+    /**
+     * Returns the boolean value at the path, or the default if it's missing or not a boolean.
+     *
+     * @param path The path of the value
+     * @param def The default value
+     * @return The value
+     */
+    public boolean getBoolean(String path, boolean def) {
+        final Object value = get(path);
+        return value instanceof Boolean ? (Boolean) value : def;
+    }
+
+    /**
+     * Returns the string value at the path, or the default if it's missing.
+     *
+     * @param path The path of the value
+     * @param def The default value
+     * @return The value
+     */
+    public String getString(String path, String def) {
+        final Object value = get(path);
+        return value != null ? value.toString() : def;
+    }
+
+    private Object get(String path) {
+        Object value = root;
+        for (String key : path.split("\\.")) {
+            if (!(value instanceof Map)) {
+                return null;
+            }
+            value = ((Map<?, ?>) value).get(key);
+        }
+        return value;
+    }
+
+    /**
+     * Loads the configuration from the file. If the file doesn't exist, the configuration bundled with the game is used instead.
+     *
+     * @param file The configuration file
+     * @return The loaded configuration
+     * @throws IOException If the file can't be read or isn't valid YAML
+     */
+    public static Configuration load(File file) throws IOException {
+        try (InputStream in = file.exists() ? new FileInputStream(file) : Configuration.class.getResourceAsStream("/" + file.getName())) {
+            if (in == null) {
+                return new Configuration();
+            }
+            final Object root = new Yaml().load(in);
+            return root instanceof Map ? new Configuration((Map<?, ?>) root) : new Configuration();
+        } catch (YAMLException ex) {
+            throw new IOException("Invalid configuration file: " + file, ex);
+        }
+    }
+}
@@ -23,6 +23,8 @@
  */
 package org.spoutcraft.client;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -39,11 +41,17 @@ import org.spoutcraft.client.universe.Universe;
  * The game class.
  */
 public class Game {
+    /**
+     * The number of threads used by the ticking elements: the universe, physics, interface, network and input.
+     */
+    public static final int TICKING_THREADS = 5;
     private static final String version;
+    private static final File CONFIG_FILE = new File("config.yml");
     // A semaphore with no permits, so that the first acquire() call blocks
     private final Semaphore semaphore = new Semaphore(0);
     private final AtomicBoolean running = new AtomicBoolean(false);
     private final Logger logger;
+    private final Configuration configuration;
     private final Universe universe;
     private final Physics physics;
     private final Interface nterface;
@@ -61,6 +69,7 @@ public class Game {
 
     public Game() {
         logger = LogManager.getLogger("Client");
+        configuration = loadConfiguration();
         universe = new Universe(this);
         physics = new Physics(this);
         nterface = new Interface(this);
@@ -84,10 +93,23 @@ public class Game {
         input.stop();
     }
 
+    private Configuration loadConfiguration() {
+        try {
+            return Configuration.load(CONFIG_FILE);
+        } catch (IOException ex) {
+            logger.warn("Couldn't load the configuration, using the defaults", ex);
+            return new Configuration();
+        }
+    }
+
     public Logger getLogger() {
         return logger;
     }
 
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
     public Universe getUniverse() {
         return universe;
     }
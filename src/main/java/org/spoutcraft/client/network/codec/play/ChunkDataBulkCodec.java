@@ -37,8 +37,8 @@ public class ChunkDataBulkCodec implements Codec<ChunkDataBulkMessage> {
         final short columnCount = buf.readShort();
         final int compressedDataLength = buf.readInt();
         final boolean hasSkyLight = buf.readBoolean();
-        final byte[] compressedData = new byte[compressedDataLength];
-        buf.readBytes(compressedData, 0, compressedData.length);
+        // Owned by the message, the chunk decoder releases it once inflated
+        final ByteBuf compressedData = buf.readBytes(compressedDataLength);
         final int[] columnXs = new int[columnCount];
         final int[] columnZs = new int[columnCount];
         final short[] primaryBitMaps = new short[columnCount];
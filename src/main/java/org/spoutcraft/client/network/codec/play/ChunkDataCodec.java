@@ -40,8 +40,9 @@ public class ChunkDataCodec implements Codec<ChunkDataMessage> {
         final short primaryBitMap = (short) buf.readUnsignedShort();
         final short additionalDataBitMap = (short) buf.readUnsignedShort();
         final int compressedSize = buf.readInt();
-        final byte[] compressedData = new byte[compressedSize];
-        buf.readBytes(compressedData);
+        // The data is moved to a buffer owned by the message, to be inflated directly by the chunk decoder.
+        // A slice of the frame can't be retained instead, since the frame's memory may be reused once decoded.
+        final ByteBuf compressedData = buf.readBytes(compressedSize);
         return new ChunkDataMessage(x, z, groundUpContinuous, primaryBitMap, additionalDataBitMap, compressedSize, compressedData);
     }
 
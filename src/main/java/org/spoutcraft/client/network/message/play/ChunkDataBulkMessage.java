@@ -25,6 +25,8 @@ package org.spoutcraft.client.network.message.play;
 
 import java.util.Arrays;
 
+import io.netty.buffer.ByteBuf;
+
 import org.spoutcraft.client.network.message.ChannelMessage;
 
 public class ChunkDataBulkMessage extends ChannelMessage {
@@ -32,13 +34,13 @@ public class ChunkDataBulkMessage extends ChannelMessage {
     private final short columnCount;
     private final int compressedDataLength;
     private final boolean hasSkyLight;
-    private final byte[] compressedData;
+    private final ByteBuf compressedData;
     private final int[] columnXs;
     private final int[] columnZs;
     private final short[] primaryBitMaps;
     private final short[] additionalDataBitMaps;
 
-    public ChunkDataBulkMessage(short columnCount, int compressedDataLength, boolean hasSkyLight, byte[] compressedData, int[] columnXs, int[] columnZs, short[] primaryBitMaps, short[] additionalDataBitMaps) {
+    public ChunkDataBulkMessage(short columnCount, int compressedDataLength, boolean hasSkyLight, ByteBuf compressedData, int[] columnXs, int[] columnZs, short[] primaryBitMaps, short[] additionalDataBitMaps) {
         super(CHANNELS);
 
         this.columnCount = columnCount;
@@ -63,7 +65,12 @@ public class ChunkDataBulkMessage extends ChannelMessage {
         return hasSkyLight;
     }
 
-    public byte[] getCompressedData() {
+    /**
+     * Returns the buffer containing the compressed data. The message owns the buffer, which must be released once the data has been consumed.
+     *
+     * @return The compressed data buffer
+     */
+    public ByteBuf getCompressedData() {
         return compressedData;
     }
 
@@ -89,7 +96,7 @@ public class ChunkDataBulkMessage extends ChannelMessage {
                 "columnCount=" + columnCount +
                 ", compressedDataLength=" + compressedDataLength +
                 ", hasSkyLight=" + hasSkyLight +
-                ", compressedData=" + Arrays.toString(compressedData) +
+                ", compressedData=" + compressedData +
                 ", columnXs=" + Arrays.toString(columnXs) +
                 ", columnZs=" + Arrays.toString(columnZs) +
                 ", primaryBitMaps=" + Arrays.toString(primaryBitMaps) +
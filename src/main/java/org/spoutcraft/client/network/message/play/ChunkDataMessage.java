@@ -23,7 +23,7 @@
  */
 package org.spoutcraft.client.network.message.play;
 
-import java.util.Arrays;
+import io.netty.buffer.ByteBuf;
 
 import org.spoutcraft.client.network.message.ChannelMessage;
 
@@ -35,9 +35,9 @@ public class ChunkDataMessage extends ChannelMessage {
     private final short primaryBitMap;
     private final short additionalDataBitMap;
     private final int compressedDataLength;
-    private final byte[] compressedData;
+    private final ByteBuf compressedData;
 
-    public ChunkDataMessage(int columnX, int columnZ, boolean groundUpContinuous, short primaryBitMap, short additionalDataBitMap, int compressedDataLength, byte[] compressedData) {
+    public ChunkDataMessage(int columnX, int columnZ, boolean groundUpContinuous, short primaryBitMap, short additionalDataBitMap, int compressedDataLength, ByteBuf compressedData) {
         super(CHANNELS);
         this.columnX = columnX;
         this.columnZ = columnZ;
@@ -72,7 +72,12 @@ public class ChunkDataMessage extends ChannelMessage {
         return compressedDataLength;
     }
 
-    public byte[] getCompressedData() {
+    /**
+     * Returns the buffer containing the compressed data. The message owns the buffer, which must be released once the data has been consumed.
+     *
+     * @return The compressed data buffer
+     */
+    public ByteBuf getCompressedData() {
         return compressedData;
     }
 
@@ -85,7 +90,7 @@ public class ChunkDataMessage extends ChannelMessage {
                 ", primaryBitMap=" + primaryBitMap +
                 ", additionalDataBitMap=" + additionalDataBitMap +
                 ", compressedDataLength=" + compressedDataLength +
-                ", compressedData=" + Arrays.toString(compressedData) +
+                ", compressedData=" + compressedData +
                 '}';
     }
 }
@@ -27,12 +27,15 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
+import java.util.Set;
 
 import com.flowpowered.commons.ViewFrustum;
 import com.flowpowered.commons.ticking.TickingElement;
+import com.flowpowered.math.GenericMath;
 import com.flowpowered.math.TrigMath;
 import com.flowpowered.math.imaginary.Quaternionf;
 import com.flowpowered.math.vector.Vector3f;
@@ -45,15 +48,27 @@ import org.lwjgl.input.Keyboard;
 
 import org.spout.renderer.api.Camera;
 import org.spout.renderer.api.GLVersioned.GLVersion;
+import org.spout.renderer.api.gl.VertexArray;
 import org.spout.renderer.api.model.Model;
 
+import org.spoutcraft.client.Configuration;
 import org.spoutcraft.client.Game;
 import org.spoutcraft.client.input.Input;
 import org.spoutcraft.client.input.event.KeyboardEvent;
+import org.spoutcraft.client.nterface.culling.ChunkConnectivity;
+import org.spoutcraft.client.nterface.culling.ChunkOcclusionCuller;
+import org.spoutcraft.client.nterface.culling.ChunkOcclusionCuller.ChunkGraph;
+import org.spoutcraft.client.nterface.culling.ChunkRegionGrid;
+import org.spoutcraft.client.nterface.mesh.ChunkDependencyTracker;
+import org.spoutcraft.client.nterface.mesh.ChunkMeshEngine;
+import org.spoutcraft.client.nterface.mesh.ChunkMesher;
+import org.spoutcraft.client.nterface.mesh.GreedyChunkMesher;
 import org.spoutcraft.client.nterface.mesh.ParallelChunkMesher;
 import org.spoutcraft.client.nterface.mesh.ParallelChunkMesher.ChunkModel;
 import org.spoutcraft.client.nterface.mesh.StandardChunkMesher;
+import org.spoutcraft.client.nterface.render.BoundedResourcePool;
 import org.spoutcraft.client.nterface.render.Renderer;
+import org.spoutcraft.client.nterface.render.TickTimeRecorder;
 import org.spoutcraft.client.nterface.snapshot.CameraSnapshot;
 import org.spoutcraft.client.physics.snapshot.PlayerSnapshot;
 import org.spoutcraft.client.universe.snapshot.ChunkSnapshot;
@@ -72,13 +87,25 @@ public class Interface extends TickingElement {
     private static final float LIGHT_ANGLE_LIMIT = PI / 64;
     private static final Vector3f[] CHUNK_VERTICES;
     private static final float MOUSE_SENSITIVITY = 0.08f;
+    private static final long REPORT_INTERVAL = 5000000000L;
+    // How far past a level of detail distance a chunk has to be before it's remeshed, so chunks on the boundary don't keep switching levels
+    private static final float DETAIL_HYSTERESIS = 1;
     private final Game game;
     private final Renderer renderer = new Renderer();
     private final ParallelChunkMesher mesher;
     private final Map<Vector3i, ChunkModel> chunkModels = new HashMap<>();
+    private final ChunkRegionGrid<ChunkModel> chunkModelGrid = new ChunkRegionGrid<>();
+    private final List<ChunkModel> visibleChunkModels = new ArrayList<>();
+    private final boolean occlusionCulling;
+    private final ChunkOcclusionCuller occlusionCuller = new ChunkOcclusionCuller();
+    private final List<Vector3i> reachedChunks = new ArrayList<>();
+    private final ChunkModelGraph chunkModelGraph = new ChunkModelGraph();
+    // The distances, in chunks, past which each level of detail after the first is used
+    private final int[] detailDistances;
+    private Vector3i lastDetailCameraChunk = null;
     private long worldLastUpdateNumber = -1;
-    private boolean lastUpdatePartial = false;
     private final TObjectLongMap<Vector3i> chunkLastUpdateNumbers = new TObjectLongHashMap<>();
+    private final ChunkDependencyTracker chunkDependencies = new ChunkDependencyTracker();
     private final ViewFrustum frustum = new ViewFrustum();
     private float cameraPitch = 0;
     private float cameraYaw = 0;
@@ -86,6 +113,12 @@ public class Interface extends TickingElement {
     private int mouseY = 0;
     private boolean mouseGrabbed = false;
     private final CameraSnapshot cameraSnapshot = new CameraSnapshot();
+    private long lastMeshingReportTime = System.nanoTime();
+    private long lastMeshedCount = 0;
+    private final int uploadByteBudget;
+    private final long uploadTimeBudget;
+    private final TickTimeRecorder tickTimes;
+    private long lastTickTimesReportTime = System.nanoTime();
 
     static {
         CHUNK_VERTICES = new Vector3f[8];
@@ -107,7 +140,41 @@ public class Interface extends TickingElement {
     public Interface(Game game) {
         super("interface", TPS);
         this.game = game;
-        mesher = new ParallelChunkMesher(this, new StandardChunkMesher());
+        final Configuration configuration = game.getConfiguration();
+        final ChunkMesher chunkMesher = createChunkMesher(configuration.getString("graphics.chunk_meshing.mesher", "standard"));
+        final String engineName = configuration.getString("graphics.chunk_meshing.engine", "fork_join");
+        ChunkMeshEngine engine = ChunkMeshEngine.get(engineName);
+        if (engine == null) {
+            game.getLogger().warn("Unknown chunk meshing engine \"" + engineName + "\", using the fork-join one");
+            engine = ChunkMeshEngine.FORK_JOIN;
+        }
+        int threads = configuration.getInt("graphics.chunk_meshing.threads", 0);
+        if (threads <= 0) {
+            // Use the cores that aren't already busy ticking
+            threads = Math.max(1, Runtime.getRuntime().availableProcessors() - Game.TICKING_THREADS);
+        }
+        mesher = new ParallelChunkMesher(this, chunkMesher, engine, threads);
+        game.getLogger().info("Meshing chunks using the " + engine.name().toLowerCase() + " engine with " + threads + " thread(s)");
+        uploadByteBudget = configuration.getInt("graphics.chunk_meshing.upload_budget_kb", 512) * 1024;
+        uploadTimeBudget = configuration.getInt("graphics.chunk_meshing.upload_budget_ms", 2) * 1000000L;
+        occlusionCulling = configuration.getBoolean("graphics.occlusion_culling.enabled", true);
+        tickTimes = configuration.getBoolean("graphics.report_tick_times", false) ? new TickTimeRecorder() : null;
+        detailDistances = new int[]{
+                configuration.getInt("graphics.level_of_detail.half_distance", 8),
+                configuration.getInt("graphics.level_of_detail.quarter_distance", 16)
+        };
+    }
+
+    private ChunkMesher createChunkMesher(String name) {
+        switch (name.toLowerCase()) {
+            case "greedy":
+                return new GreedyChunkMesher();
+            case "standard":
+                return new StandardChunkMesher();
+            default:
+                game.getLogger().warn("Unknown chunk mesher \"" + name + "\", using the standard one");
+                return new StandardChunkMesher();
+        }
     }
 
     @Override
@@ -125,12 +192,24 @@ public class Interface extends TickingElement {
 
     @Override
     public void onTick(long dt) {
+        final long tickStart = System.nanoTime();
         handleInput(dt / 1000000000f);
         final WorldSnapshot world = game.getUniverse().getActiveWorldSnapshot();
         updateChunkModels(world);
+        updateChunkModelDetail(world);
+        cullChunkModels();
+        // Upload the completed meshes after culling, so the visible ones go first
+        mesher.upload(uploadByteBudget, uploadTimeBudget);
+        mesher.reprioritize();
+        reportMeshing();
         updateLight(world != null ? world.getTime() : 0);
         renderer.render();
         updateSnapshots();
+        if (tickTimes != null) {
+            // The whole tick, which includes the mesh uploads as well as the rendering
+            tickTimes.record(System.nanoTime() - tickStart);
+            reportTickTimes();
+        }
     }
 
     @Override
@@ -138,12 +217,131 @@ public class Interface extends TickingElement {
         game.getLogger().info("Stopping interface");
         // We make sure to stop the input because it relies on the display
         game.getInput().stop();
-        mesher.shutdown();
-        // Updating with a null world will clear all models
+        // Updating with a null world will clear all models, their vertex arrays are destroyed with the mesher's pool
         updateChunkModels(null);
+        mesher.shutdown();
         renderer.dispose();
     }
 
+    private void cullChunkModels() {
+        // Hide the models from the last frame, then show those that are in the frustum for this one
+        for (ChunkModel model : visibleChunkModels) {
+            model.setVisible(false);
+        }
+        visibleChunkModels.clear();
+        chunkModelGrid.getVisible(frustum, visibleChunkModels);
+        for (ChunkModel model : visibleChunkModels) {
+            model.setVisible(true);
+        }
+        if (occlusionCulling && !chunkModels.isEmpty()) {
+            occlusionCullChunkModels();
+        }
+    }
+
+    private void occlusionCullChunkModels() {
+        final Vector3i cameraChunk = getCameraChunk();
+        chunkModelGraph.updateBounds();
+        // Outside of the world, the frustum culling will have to do
+        if (!chunkModelGraph.isInBounds(cameraChunk)) {
+            return;
+        }
+        // The graph uses the visibility from the frustum culling, so only the chunks in the frustum are reached
+        occlusionCuller.cull(cameraChunk, chunkModelGraph, reachedChunks);
+        for (ChunkModel model : visibleChunkModels) {
+            model.setVisible(false);
+        }
+        visibleChunkModels.clear();
+        for (Vector3i position : reachedChunks) {
+            final ChunkModel model = chunkModels.get(position);
+            if (model != null) {
+                model.setVisible(true);
+                visibleChunkModels.add(model);
+            }
+        }
+        reachedChunks.clear();
+    }
+
+    private Vector3i getCameraChunk() {
+        final Vector3f cameraPosition = renderer.getRenderModelsNode().<Camera>getAttribute("camera").getPosition();
+        return new Vector3i(GenericMath.floor(cameraPosition.getX()) >> Chunk.BLOCKS.BITS, GenericMath.floor(cameraPosition.getY()) >> Chunk.BLOCKS.BITS,
+                GenericMath.floor(cameraPosition.getZ()) >> Chunk.BLOCKS.BITS);
+    }
+
+    private void updateChunkModelDetail(WorldSnapshot world) {
+        // The levels only change when the camera moves to another chunk
+        final Vector3i cameraChunk = getCameraChunk();
+        if (world == null || cameraChunk.equals(lastDetailCameraChunk)) {
+            return;
+        }
+        lastDetailCameraChunk = cameraChunk;
+        final Map<Vector3i, ChunkSnapshot> chunks = world.getChunks();
+        for (Entry<Vector3i, ChunkModel> chunkModel : chunkModels.entrySet()) {
+            final Vector3i position = chunkModel.getKey();
+            final ChunkModel model = chunkModel.getValue();
+            if (getDetailLevel(position, model.getDetailLevel()) == model.getDetailLevel()) {
+                continue;
+            }
+            final ChunkSnapshot chunk = chunks.get(position);
+            if (chunk != null) {
+                // Remesh at the new level, the current model is rendered until then. This only replaces the values of the collections, so the iteration is safe
+                removeChunkModel(model, false);
+                addChunkModel(chunk, model);
+            }
+        }
+    }
+
+    // Returns the level of detail for the chunk position, keeping the current one (-1 if none) if it's still close enough to the distance at which it changes
+    private int getDetailLevel(Vector3i position, int current) {
+        final Vector3i cameraChunk = lastDetailCameraChunk != null ? lastDetailCameraChunk : getCameraChunk();
+        final float distance = position.sub(cameraChunk).length();
+        final int level = getDetailLevel(distance);
+        if (current >= 0 && level != current && getDetailLevel(level > current ? distance - DETAIL_HYSTERESIS : distance + DETAIL_HYSTERESIS) == current) {
+            return current;
+        }
+        return level;
+    }
+
+    private int getDetailLevel(float distance) {
+        int level = 0;
+        for (int i = 0; i < detailDistances.length; i++) {
+            if (detailDistances[i] > 0 && distance > detailDistances[i]) {
+                level = i + 1;
+            }
+        }
+        return level;
+    }
+
+    private void reportMeshing() {
+        final long time = System.nanoTime();
+        final long elapsed = time - lastMeshingReportTime;
+        if (elapsed < REPORT_INTERVAL) {
+            return;
+        }
+        final long meshedCount = mesher.getMeshedCount();
+        final long meshed = meshedCount - lastMeshedCount;
+        final int pending = mesher.getPendingCount();
+        // Only report when there's meshing activity
+        if (meshed > 0 || pending > 0) {
+            final BoundedResourcePool<VertexArray> vertexArrays = mesher.getVertexArrayPool();
+            game.getLogger().info("Chunk meshing: " + pending + " pending, " + String.format("%.1f", meshed / (elapsed / 1e9)) + " chunks/s, " + vertexArrays.getBorrowedCount()
+                    + " vertex arrays in use, " + vertexArrays.getPooledCount() + " pooled (" + vertexArrays.getPooledBytes() / 1024 + " KiB), " + vertexArrays.getReusedCount() + " reused and " + vertexArrays.getAllocatedCount() + " created in total");
+        }
+        lastMeshingReportTime = time;
+        lastMeshedCount = meshedCount;
+    }
+
+    private void reportTickTimes() {
+        final long time = System.nanoTime();
+        if (time - lastTickTimesReportTime < REPORT_INTERVAL) {
+            return;
+        }
+        game.getLogger().info("Tick times over " + tickTimes.getCount() + " ticks: " + String.format("%.2f ms median, %.2f ms 95th, %.2f ms 99th percentile, %.2f ms max",
+                tickTimes.getPercentile(50) / 1e6, tickTimes.getPercentile(95) / 1e6, tickTimes.getPercentile(99) / 1e6, tickTimes.getPercentile(100) / 1e6)
+                + ", " + mesher.getUploadPendingCount() + " chunk models waiting for their mesh");
+        tickTimes.reset();
+        lastTickTimesReportTime = time;
+    }
+
     private void updateLight(long time) {
         time %= World.MILLIS_IN_DAY;
         double lightAngle;
@@ -167,20 +365,19 @@ public class Interface extends TickingElement {
                 removeChunkModel(model, true);
             }
             chunkModels.clear();
+            chunkModelGrid.clear();
+            chunkModelGraph.clear();
+            visibleChunkModels.clear();
             chunkLastUpdateNumbers.clear();
+            chunkDependencies.clear();
             worldLastUpdateNumber = -1;
-            lastUpdatePartial = false;
             return;
         }
         // Else get the chunks
         final Map<Vector3i, ChunkSnapshot> chunks = world.getChunks();
-        // If the snapshot hasn't updated yet, there's probably nothing to do
+        // If the snapshot hasn't updated yet, there's nothing to do
         final long updateNumber = world.getUpdateNumber();
         if (updateNumber <= worldLastUpdateNumber) {
-            if (lastUpdatePartial) {
-                // But if the last update was partial, there might still be work to do though
-                updateExistingChunkModels(chunks);
-            }
             return;
         }
         // Else we need to update the chunk models, start by removing chunks we don't need anymore
@@ -194,11 +391,15 @@ public class Interface extends TickingElement {
                 removeChunkModel(model, true);
                 // Finally, remove the chunk from the collections
                 iterator.remove();
+                chunkModelGrid.remove(position);
+                chunkModelGraph.remove(position);
                 chunkLastUpdateNumbers.remove(position);
             }
         }
+        // Find the chunks with neighbours that changed in a way which affects their mesh
+        final Set<Vector3i> neighbourChanges = chunkDependencies.update(chunks);
         // Update the existing chunk models to match the world
-        updateExistingChunkModels(chunks);
+        updateExistingChunkModels(chunks, neighbourChanges);
         // Update the world update number
         worldLastUpdateNumber = updateNumber;
         // Safety precautions
@@ -208,17 +409,11 @@ public class Interface extends TickingElement {
         }
     }
 
-    private void updateExistingChunkModels(final Map<Vector3i, ChunkSnapshot> newChunks) {
-        // Go through all the chunks, and update those that are out of date
-        boolean skippedChunk = false;
+    private void updateExistingChunkModels(Map<Vector3i, ChunkSnapshot> newChunks, Set<Vector3i> neighbourChanges) {
+        // Go through all the chunks, and update those that are out of date. The mesher takes care of meshing the visible and closest ones first
         for (ChunkSnapshot newChunk : newChunks.values()) {
-            // If the chunk model is out of date
-            if (newChunk.getUpdateNumber() > chunkLastUpdateNumbers.get(newChunk.getPosition())) {
-                // If it's not visible, skip it, and mark that we skipped at least one chunk
-                if (!isChunkVisible(newChunk.getPosition().mul(16))) {
-                    skippedChunk = true;
-                    continue;
-                }
+            // If the chunk model is out of date, or one of its neighbours changed along the shared face
+            if (newChunk.getUpdateNumber() > chunkLastUpdateNumbers.get(newChunk.getPosition()) || neighbourChanges.contains(newChunk.getPosition())) {
                 final Vector3i position = newChunk.getPosition();
                 // If we have a previous model remove it to be replaced
                 final ChunkModel previous = chunkModels.get(position);
@@ -231,19 +426,19 @@ public class Interface extends TickingElement {
                 addChunkModel(newChunk, previous);
             }
         }
-        // If we skipped a chunk because it wasn't visible, the update isn't complete
-        lastUpdatePartial = skippedChunk;
     }
 
     private void addChunkModel(ChunkSnapshot chunk, ChunkModel previous) {
-        final ChunkModel model = mesher.queue(chunk);
         final Vector3i position = chunk.getPosition();
+        final ChunkModel model = mesher.queue(chunk, getDetailLevel(position, previous != null ? previous.getDetailLevel() : -1));
         model.setPosition(position.mul(16).toFloat());
         model.setRotation(Quaternionf.IDENTITY);
         // The previous model is kept to prevent frames with missing chunks because they're being meshed
         model.setPrevious(previous);
         renderer.addSolidModel(model);
         chunkModels.put(position, model);
+        chunkModelGrid.put(position, model);
+        chunkModelGraph.add(position);
         chunkLastUpdateNumbers.put(position, chunk.getUpdateNumber());
         game.getLogger().info("Updated chunk model: " + position);
     }
@@ -254,7 +449,7 @@ public class Interface extends TickingElement {
             models.remove(model);
         }
         if (destroy) {
-            // TODO: recycle the vertex array?
+            // This returns the vertex array to the mesher's pool
             model.destroy();
         }
     }
@@ -371,4 +566,64 @@ public class Interface extends TickingElement {
     public boolean isChunkVisible(Vector3f position) {
         return frustum.intersectsCuboid(CHUNK_VERTICES, position);
     }
+
+    // The chunk models as a graph for the occlusion culling. Positions without a model in the columns of the world are empty sections, so they're visible if in the frustum, and fully connected
+    // The bounds are grown as models are added, and only recomputed when one on the edge was removed
+    private class ChunkModelGraph implements ChunkGraph {
+        private int minX = Integer.MAX_VALUE;
+        private int maxX = Integer.MIN_VALUE;
+        private int minZ = Integer.MAX_VALUE;
+        private int maxZ = Integer.MIN_VALUE;
+        private boolean outdatedBounds = false;
+
+        private void add(Vector3i position) {
+            minX = Math.min(minX, position.getX());
+            maxX = Math.max(maxX, position.getX());
+            minZ = Math.min(minZ, position.getZ());
+            maxZ = Math.max(maxZ, position.getZ());
+        }
+
+        private void remove(Vector3i position) {
+            if (position.getX() == minX || position.getX() == maxX || position.getZ() == minZ || position.getZ() == maxZ) {
+                outdatedBounds = true;
+            }
+        }
+
+        private void clear() {
+            minX = minZ = Integer.MAX_VALUE;
+            maxX = maxZ = Integer.MIN_VALUE;
+            outdatedBounds = false;
+        }
+
+        private void updateBounds() {
+            if (!outdatedBounds) {
+                return;
+            }
+            clear();
+            for (Vector3i position : chunkModels.keySet()) {
+                add(position);
+            }
+        }
+
+        private boolean isInBounds(Vector3i position) {
+            final int y = position.getY();
+            return y >= 0 && y < World.CHUNK_COLUMN_HEIGHT && position.getX() >= minX && position.getX() <= maxX && position.getZ() >= minZ && position.getZ() <= maxZ;
+        }
+
+        @Override
+        public boolean isVisible(Vector3i position) {
+            if (!isInBounds(position)) {
+                return false;
+            }
+            final ChunkModel model = chunkModels.get(position);
+            // Models have already been frustum culled
+            return model != null ? model.isVisible() : isChunkVisible(position.mul(Chunk.BLOCKS.SIZE));
+        }
+
+        @Override
+        public long getConnectivity(Vector3i position) {
+            final ChunkModel model = chunkModels.get(position);
+            return model != null ? model.getConnectivity() : ChunkConnectivity.ALL;
+        }
+    }
 }
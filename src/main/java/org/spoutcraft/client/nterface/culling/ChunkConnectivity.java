@@ -0,0 +1,177 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.culling;
+
+import java.util.Arrays;
+
+import org.spoutcraft.client.nterface.mesh.ChunkSnapshotGroup;
+import org.spoutcraft.client.universe.block.BlockFace;
+import org.spoutcraft.client.universe.block.material.MaterialTable;
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ * Computes which faces of a chunk are connected to each other through non-opaque blocks, for occlusion culling. The connectivity is stored as a bit set in a long, with one bit for each pair of
+ * the six faces (see {@link #isConnected(long, BlockFace, BlockFace)}). The flood fill uses scratch buffers, which are reused between chunks, so instances must only be used by one thread at a
+ * time.
+ */
+public class ChunkConnectivity {
+    /**
+     * The connectivity of a chunk with no faces connected, such as a solid one.
+     */
+    public static final long NONE = 0;
+    /**
+     * The connectivity of a chunk with all faces connected, such as an empty one.
+     */
+    public static final long ALL = (1L << 36) - 1;
+    private static final int SIZE = Chunk.BLOCKS.SIZE;
+    private static final int VOLUME = SIZE * SIZE * SIZE;
+    // The faces of the chunk touched by each block, as a bit set of the face ordinals
+    private static final byte[] BORDER_FACES = new byte[VOLUME];
+    private final boolean[] visited = new boolean[VOLUME];
+    private final int[] queue = new int[VOLUME];
+
+    static {
+        final int max = SIZE - 1;
+        for (int y = 0; y < SIZE; y++) {
+            for (int z = 0; z < SIZE; z++) {
+                for (int x = 0; x < SIZE; x++) {
+                    int faces = 0;
+                    faces |= x == 0 ? getBit(BlockFace.NORTH) : x == max ? getBit(BlockFace.SOUTH) : 0;
+                    faces |= y == 0 ? getBit(BlockFace.BOTTOM) : y == max ? getBit(BlockFace.TOP) : 0;
+                    faces |= z == 0 ? getBit(BlockFace.EAST) : z == max ? getBit(BlockFace.WEST) : 0;
+                    BORDER_FACES[getIndex(x, y, z)] = (byte) faces;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the connectivity of the chunk from its padded material indices, as returned by {@link org.spoutcraft.client.nterface.mesh.ChunkMeshBuffers#prepare(ChunkSnapshotGroup)}. Only the
+     * blocks of the chunk are used, not the border. Two faces are connected if there's a path of non-opaque blocks, moving along the axes, between them. Pockets of non-opaque blocks enclosed in
+     * the chunk are ignored.
+     *
+     * @param materials The padded material indices
+     * @param table The table for the indices
+     * @return The connectivity
+     */
+    public long compute(int[] materials, MaterialTable table) {
+        Arrays.fill(visited, false);
+        long connectivity = NONE;
+        // Only start filling from the border blocks, as the other ones can't connect any faces
+        for (int index = 0; index < VOLUME; index++) {
+            if (BORDER_FACES[index] == 0 || visited[index] || isOpaque(materials, table, index)) {
+                continue;
+            }
+            connectivity |= getConnectivity(fill(materials, table, index));
+            if (connectivity == ALL) {
+                break;
+            }
+        }
+        return connectivity;
+    }
+
+    // Fills the non-opaque blocks connected to the start one, returning the faces they touch
+    private int fill(int[] materials, MaterialTable table, int start) {
+        int faces = 0;
+        int head = 0;
+        int tail = 0;
+        visited[start] = true;
+        queue[tail++] = start;
+        while (head < tail) {
+            final int index = queue[head++];
+            faces |= BORDER_FACES[index];
+            final int x = index & Chunk.BLOCKS.MASK;
+            final int z = index >> Chunk.BLOCKS.BITS & Chunk.BLOCKS.MASK;
+            final int y = index >> Chunk.BLOCKS.DOUBLE_BITS;
+            tail = visit(materials, table, x > 0, index - 1, tail);
+            tail = visit(materials, table, x < SIZE - 1, index + 1, tail);
+            tail = visit(materials, table, z > 0, index - SIZE, tail);
+            tail = visit(materials, table, z < SIZE - 1, index + SIZE, tail);
+            tail = visit(materials, table, y > 0, index - SIZE * SIZE, tail);
+            tail = visit(materials, table, y < SIZE - 1, index + SIZE * SIZE, tail);
+        }
+        return faces;
+    }
+
+    private int visit(int[] materials, MaterialTable table, boolean inside, int index, int tail) {
+        if (inside && !visited[index] && !isOpaque(materials, table, index)) {
+            visited[index] = true;
+            queue[tail++] = index;
+        }
+        return tail;
+    }
+
+    private static boolean isOpaque(int[] materials, MaterialTable table, int index) {
+        return table.isOpaque(materials[ChunkSnapshotGroup.getPaddedIndex(index & Chunk.BLOCKS.MASK, index >> Chunk.BLOCKS.DOUBLE_BITS, index >> Chunk.BLOCKS.BITS & Chunk.BLOCKS.MASK)]);
+    }
+
+    /**
+     * Returns the connectivity for a group of faces which are all connected to each other.
+     *
+     * @param faces The faces, as a bit set of the face ordinals
+     * @return The connectivity
+     */
+    public static long getConnectivity(int faces) {
+        long connectivity = NONE;
+        for (int from = 0; from < 6; from++) {
+            if ((faces & 1 << from) != 0) {
+                connectivity |= (long) faces << from * 6;
+            }
+        }
+        return connectivity;
+    }
+
+    /**
+     * Returns true if the two faces are connected in the connectivity. The faces can be the same, in which case this is true if the face has any non-opaque block.
+     *
+     * @param connectivity The connectivity
+     * @param from The first face
+     * @param to The second face
+     * @return Whether or not the faces are connected
+     */
+    public static boolean isConnected(long connectivity, BlockFace from, BlockFace to) {
+        return isConnected(connectivity, from.ordinal(), to.ordinal());
+    }
+
+    /**
+     * Returns true if the two faces, given by their ordinals, are connected in the connectivity.
+     *
+     * @param connectivity The connectivity
+     * @param from The ordinal of the first face
+     * @param to The ordinal of the second face
+     * @return Whether or not the faces are connected
+     * @see #isConnected(long, BlockFace, BlockFace)
+     */
+    public static boolean isConnected(long connectivity, int from, int to) {
+        return (connectivity & 1L << from * 6 + to) != 0;
+    }
+
+    private static int getBit(BlockFace face) {
+        return 1 << face.ordinal();
+    }
+
+    private static int getIndex(int x, int y, int z) {
+        return y << Chunk.BLOCKS.DOUBLE_BITS | z << Chunk.BLOCKS.BITS | x;
+    }
+}
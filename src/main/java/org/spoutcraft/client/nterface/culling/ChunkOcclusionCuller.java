@@ -0,0 +1,115 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.culling;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import org.spoutcraft.client.universe.block.BlockFace;
+
+/**
+ * Finds the chunks which can be seen from the camera chunk by flood filling through the chunks, using their {@link org.spoutcraft.client.nterface.culling.ChunkConnectivity}. A chunk entered
+ * through one of its faces is only left through the faces connected to it, so chunks hidden behind solid terrain or in closed caves aren't reached. The fill also never goes back towards the
+ * camera, which would follow paths that can't be seen, and stops at the chunks for which {@link org.spoutcraft.client.nterface.culling.ChunkOcclusionCuller.ChunkGraph#isVisible(Vector3i)} is
+ * false, usually those outside of the frustum or of the world. This is an approximation: it can report chunks which are actually hidden, and as each chunk is only entered once, through the first
+ * face reached, it can rarely miss one seen through a narrow path. The search state is reused between calls, so this isn't thread safe.
+ */
+public class ChunkOcclusionCuller {
+    private static final BlockFace[] FACES = {BlockFace.TOP, BlockFace.BOTTOM, BlockFace.NORTH, BlockFace.SOUTH, BlockFace.EAST, BlockFace.WEST};
+    private final Queue<Step> queue = new ArrayDeque<>();
+    private final Set<Vector3i> visited = new HashSet<>();
+
+    /**
+     * Adds the positions of the chunks reachable from the start chunk to the collection. The start chunk is always reached.
+     *
+     * @param start The position of the chunk containing the camera, in chunk coordinates
+     * @param graph The chunks to search through
+     * @param reached The collection to add the reachable chunk positions to
+     */
+    public void cull(Vector3i start, ChunkGraph graph, Collection<? super Vector3i> reached) {
+        visited.add(start);
+        reached.add(start);
+        // The camera can see out of all the faces of its chunk, whatever the connectivity
+        for (BlockFace face : FACES) {
+            queue.add(new Step(start.add(face.getOffset()), face.getOpposite().ordinal(), 1 << face.ordinal()));
+        }
+        Step step;
+        while ((step = queue.poll()) != null) {
+            final Vector3i position = step.position;
+            if (!visited.add(position) || !graph.isVisible(position)) {
+                continue;
+            }
+            reached.add(position);
+            final long connectivity = graph.getConnectivity(position);
+            for (BlockFace face : FACES) {
+                // Going back against one of the directions taken so far can't lead to anything visible
+                if ((step.directions & 1 << face.getOpposite().ordinal()) != 0 || !ChunkConnectivity.isConnected(connectivity, step.entry, face.ordinal())) {
+                    continue;
+                }
+                queue.add(new Step(position.add(face.getOffset()), face.getOpposite().ordinal(), step.directions | 1 << face.ordinal()));
+            }
+        }
+        visited.clear();
+    }
+
+    /**
+     * The chunks for the culler to search through.
+     */
+    public interface ChunkGraph {
+        /**
+         * Returns true if the chunk at the position can be reached at all, that is if it's in the frustum and in the bounds of the world. Positions without a chunk, such as empty sections of
+         * the world, can still be visible.
+         *
+         * @param position The position of the chunk, in chunk coordinates
+         * @return Whether or not the chunk is visible
+         */
+        boolean isVisible(Vector3i position);
+
+        /**
+         * Returns the connectivity of the chunk at the position. This should be {@link org.spoutcraft.client.nterface.culling.ChunkConnectivity#ALL} for empty positions and chunks for which it
+         * isn't known yet.
+         *
+         * @param position The position of the chunk, in chunk coordinates
+         * @return The connectivity of the chunk
+         */
+        long getConnectivity(Vector3i position);
+    }
+
+    private static class Step {
+        private final Vector3i position;
+        private final int entry;
+        private final int directions;
+
+        private Step(Vector3i position, int entry, int directions) {
+            this.position = position;
+            this.entry = entry;
+            this.directions = directions;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.culling;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.flowpowered.commons.ViewFrustum;
+import com.flowpowered.math.vector.Vector3f;
+import com.flowpowered.math.vector.Vector3i;
+
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ * A two level grid of values by chunk position, for frustum culling. Chunks are grouped into cubic regions of {@link #REGION_SIZE} chunks per side. Regions outside of the frustum are culled with
+ * a single test, and the chunks of regions completely inside of it are all visible without further tests. Only the chunks in regions crossing the frustum planes are tested individually. This
+ * isn't thread safe.
+ *
+ * @param <T> The type of the values
+ */
+public class ChunkRegionGrid<T> {
+    /**
+     * The number of chunks per side of a region.
+     */
+    public static final int REGION_SIZE = 4;
+    private static final int REGION_BITS = 2;
+    private static final Vector3f[] CHUNK_VERTICES = createCuboidVertices(Chunk.BLOCKS.SIZE);
+    private static final Vector3f[] REGION_VERTICES = createCuboidVertices(Chunk.BLOCKS.SIZE * REGION_SIZE);
+    private final Map<Vector3i, Region<T>> regions = new HashMap<>();
+    private int size = 0;
+
+    /**
+     * Puts the value for the chunk at the position, replacing the previous one, if any.
+     *
+     * @param position The chunk position, in chunk coordinates
+     * @param value The value
+     * @return The previous value, or null
+     */
+    public T put(Vector3i position, T value) {
+        final Vector3i regionPosition = getRegionPosition(position);
+        Region<T> region = regions.get(regionPosition);
+        if (region == null) {
+            region = new Region<>(regionPosition);
+            regions.put(regionPosition, region);
+        }
+        final T previous = region.chunks.put(position, value);
+        if (previous == null) {
+            size++;
+        }
+        return previous;
+    }
+
+    /**
+     * Removes the value for the chunk at the position.
+     *
+     * @param position The chunk position, in chunk coordinates
+     * @return The removed value, or null
+     */
+    public T remove(Vector3i position) {
+        final Vector3i regionPosition = getRegionPosition(position);
+        final Region<T> region = regions.get(regionPosition);
+        if (region == null) {
+            return null;
+        }
+        final T removed = region.chunks.remove(position);
+        if (removed != null) {
+            size--;
+            if (region.chunks.isEmpty()) {
+                regions.remove(regionPosition);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the value for the chunk at the position.
+     *
+     * @param position The chunk position, in chunk coordinates
+     * @return The value, or null
+     */
+    public T get(Vector3i position) {
+        final Region<T> region = regions.get(getRegionPosition(position));
+        return region != null ? region.chunks.get(position) : null;
+    }
+
+    /**
+     * Removes all the values.
+     */
+    public void clear() {
+        regions.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns the number of values.
+     *
+     * @return The number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of non-empty regions.
+     *
+     * @return The number of regions
+     */
+    public int getRegionCount() {
+        return regions.size();
+    }
+
+    /**
+     * Adds the values for all the chunks which intersect the frustum to the collection.
+     *
+     * @param frustum The view frustum
+     * @param visible The collection to add the visible values to
+     */
+    public void getVisible(ViewFrustum frustum, Collection<? super T> visible) {
+        for (Region<T> region : regions.values()) {
+            final Vector3f origin = region.origin;
+            if (!frustum.intersectsCuboid(REGION_VERTICES, origin)) {
+                continue;
+            }
+            if (contains(frustum, REGION_VERTICES, origin)) {
+                visible.addAll(region.chunks.values());
+                continue;
+            }
+            for (Entry<Vector3i, T> chunk : region.chunks.entrySet()) {
+                final Vector3i position = chunk.getKey();
+                if (frustum.intersectsCuboid(CHUNK_VERTICES, position.getX() << Chunk.BLOCKS.BITS, position.getY() << Chunk.BLOCKS.BITS, position.getZ() << Chunk.BLOCKS.BITS)) {
+                    visible.add(chunk.getValue());
+                }
+            }
+        }
+    }
+
+    private static boolean contains(ViewFrustum frustum, Vector3f[] vertices, Vector3f position) {
+        // The frustum is convex, so it contains the cuboid if it contains all its vertices
+        for (Vector3f vertex : vertices) {
+            if (!frustum.contains(vertex.getX() + position.getX(), vertex.getY() + position.getY(), vertex.getZ() + position.getZ())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Vector3i getRegionPosition(Vector3i position) {
+        return new Vector3i(position.getX() >> REGION_BITS, position.getY() >> REGION_BITS, position.getZ() >> REGION_BITS);
+    }
+
+    private static Vector3f[] createCuboidVertices(int size) {
+        final Vector3f[] vertices = new Vector3f[8];
+        vertices[0] = new Vector3f(0, 0, size);
+        vertices[1] = new Vector3f(size, 0, size);
+        vertices[2] = new Vector3f(size, size, size);
+        vertices[3] = new Vector3f(0, size, size);
+        vertices[4] = new Vector3f(0, 0, 0);
+        vertices[5] = new Vector3f(size, 0, 0);
+        vertices[6] = new Vector3f(size, size, 0);
+        vertices[7] = new Vector3f(0, size, 0);
+        return vertices;
+    }
+
+    private static class Region<T> {
+        private final Vector3f origin;
+        private final Map<Vector3i, T> chunks = new HashMap<>();
+
+        private Region(Vector3i position) {
+            origin = position.mul(Chunk.BLOCKS.SIZE * REGION_SIZE).toFloat();
+        }
+    }
+}
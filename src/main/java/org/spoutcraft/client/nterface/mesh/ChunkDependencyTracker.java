@@ -0,0 +1,126 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import gnu.trove.iterator.TObjectLongIterator;
+import gnu.trove.map.TObjectLongMap;
+import gnu.trove.map.hash.TObjectLongHashMap;
+
+import org.spoutcraft.client.universe.block.BlockFace;
+import org.spoutcraft.client.universe.snapshot.ChunkSnapshot;
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ * Tracks the changes to the chunks of a world snapshot to find the chunks which need to be meshed again because of their neighbours. The mesh of a chunk depends on the blocks of its six neighbours
+ * along the shared faces (see {@link org.spoutcraft.client.nterface.mesh.ChunkSnapshotGroup}). A chunk is marked when one of its neighbours appears or disappears, or when a neighbour has a block
+ * changed on the face shared with the chunk. Full updates of a neighbour, and changes spanning more than one update, mark all its neighbours, since the changed blocks aren't known.
+ */
+public class ChunkDependencyTracker {
+    private static final int LAST_BLOCK = Chunk.BLOCKS.SIZE - 1;
+    private static final BlockFace[] FACES = {BlockFace.NORTH, BlockFace.SOUTH, BlockFace.BOTTOM, BlockFace.TOP, BlockFace.EAST, BlockFace.WEST};
+    private final TObjectLongMap<Vector3i> updateNumbers = new TObjectLongHashMap<>();
+
+    /**
+     * Updates the tracker to the current chunks of the world snapshot, returning the positions of the chunks which need to be meshed again because of a neighbour change. The chunks which changed
+     * themselves are only included if one of their neighbours changed too.
+     *
+     * @param chunks The current chunks, by position
+     * @return The positions of the chunks to mesh again
+     */
+    public Set<Vector3i> update(Map<Vector3i, ChunkSnapshot> chunks) {
+        final Set<Vector3i> changed = new HashSet<>();
+        // Look for the chunks which disappeared first
+        for (TObjectLongIterator<Vector3i> iterator = updateNumbers.iterator(); iterator.hasNext(); ) {
+            iterator.advance();
+            if (!chunks.containsKey(iterator.key())) {
+                addNeighbours(iterator.key(), changed);
+                iterator.remove();
+            }
+        }
+        // Then for the new and changed ones
+        for (ChunkSnapshot chunk : chunks.values()) {
+            final Vector3i position = chunk.getPosition();
+            final long updateNumber = chunk.getUpdateNumber();
+            if (!updateNumbers.containsKey(position)) {
+                addNeighbours(position, changed);
+            } else {
+                final long lastUpdateNumber = updateNumbers.get(position);
+                if (updateNumber == lastUpdateNumber) {
+                    continue;
+                }
+                final List<Vector3i> changedBlocks = chunk.getChangedBlocksSince(lastUpdateNumber);
+                if (changedBlocks == null) {
+                    addNeighbours(position, changed);
+                } else {
+                    for (Vector3i block : changedBlocks) {
+                        addBorderNeighbours(position, block, changed);
+                    }
+                }
+            }
+            updateNumbers.put(position, updateNumber);
+        }
+        // Only keep the chunks that are still there
+        changed.retainAll(chunks.keySet());
+        return changed;
+    }
+
+    /**
+     * Forgets all the tracked chunks.
+     */
+    public void clear() {
+        updateNumbers.clear();
+    }
+
+    private static void addNeighbours(Vector3i position, Set<Vector3i> changed) {
+        for (BlockFace face : FACES) {
+            changed.add(position.add(face.getOffset()));
+        }
+    }
+
+    private static void addBorderNeighbours(Vector3i position, Vector3i block, Set<Vector3i> changed) {
+        // A block can be on up to three faces, in a corner
+        if (block.getX() == 0) {
+            changed.add(position.add(BlockFace.NORTH.getOffset()));
+        } else if (block.getX() == LAST_BLOCK) {
+            changed.add(position.add(BlockFace.SOUTH.getOffset()));
+        }
+        if (block.getY() == 0) {
+            changed.add(position.add(BlockFace.BOTTOM.getOffset()));
+        } else if (block.getY() == LAST_BLOCK) {
+            changed.add(position.add(BlockFace.TOP.getOffset()));
+        }
+        if (block.getZ() == 0) {
+            changed.add(position.add(BlockFace.EAST.getOffset()));
+        } else if (block.getZ() == LAST_BLOCK) {
+            changed.add(position.add(BlockFace.WEST.getOffset()));
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import org.spoutcraft.client.nterface.culling.ChunkConnectivity;
+import org.spoutcraft.client.universe.block.BlockFace;
+import org.spoutcraft.client.universe.block.material.Material;
+import org.spoutcraft.client.universe.block.material.MaterialTable;
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ * Scratch buffers for meshing a chunk: the padded block arrays (see {@link org.spoutcraft.client.nterface.mesh.ChunkSnapshotGroup#getPaddedBlocks(short[], short[])}) and the output mesh. They are
+ * allocated once and reused for each chunk, so meshing doesn't churn memory. Buffers must only be used by one thread at a time, and the mesh must be built or copied before meshing the next chunk.
+ */
+public class ChunkMeshBuffers {
+    private final short[] blockIDs = new short[ChunkSnapshotGroup.PADDED_VOLUME];
+    private final short[] blockData = new short[ChunkSnapshotGroup.PADDED_VOLUME];
+    private final int[] materials = new int[ChunkSnapshotGroup.PADDED_VOLUME];
+    // The downsampled materials for the lower levels of detail, the full resolution ones are kept for the connectivity
+    private final int[] detailMaterials = new int[ChunkSnapshotGroup.PADDED_VOLUME];
+    private int[] materialCounts = new int[0];
+    private MaterialTable table;
+    private int size = Chunk.BLOCKS.SIZE;
+    // Scratch arrays for the meshers working one slice of the chunk at a time, such as the greedy one
+    private final BlockFace[] sliceFaces = new BlockFace[Chunk.BLOCKS.SIZE * Chunk.BLOCKS.SIZE];
+    private final int[] sliceMaterials = new int[Chunk.BLOCKS.SIZE * Chunk.BLOCKS.SIZE];
+    private final PackedChunkMesh mesh = new PackedChunkMesh();
+    private final ChunkConnectivity connectivity = new ChunkConnectivity();
+    // The connectivity of the last chunk if it was hidden, as it's uniform and the arrays aren't filled
+    private long hiddenConnectivity;
+    private boolean hidden;
+
+    /**
+     * Copies the padded blocks of the chunk into the buffers and converts them to material indices, and clears the mesh, in preparation for meshing the chunk. The indices are for the table returned
+     * by {@link #getTable()}. Returns null if the chunk has no visible faces (see {@link org.spoutcraft.client.nterface.mesh.ChunkSnapshotGroup#isHidden(MaterialTable)}), in which case the
+     * mesh should be left empty, and the block arrays aren't filled.
+     * <p/>
+     * For the lower levels of detail (see {@link org.spoutcraft.client.nterface.mesh.ChunkSnapshotGroup#getDetailLevel()}), the materials are downsampled to a grid of {@link #getSize()} cells per
+     * side, plus the border, indexed using {@link org.spoutcraft.client.nterface.mesh.ChunkSnapshotGroup#getPaddedIndex(int, int, int, int)}, and the mesh is scaled to match. A cell is visible if
+     * at least half of its blocks are, using the most common visible material. To prevent seams with neighbours of other levels, cells with a visible block on the faces of the chunk are always
+     * visible, and border cells only occlude if all their blocks are opaque, so the faces at the edges of the chunk are closed.
+     *
+     * @param chunk The chunk to mesh
+     * @return The padded material indices of the chunk, or null if there's nothing to mesh
+     */
+    public int[] prepare(ChunkSnapshotGroup chunk) {
+        table = Material.getTable();
+        mesh.clear();
+        final int level = chunk.getDetailLevel();
+        size = Chunk.BLOCKS.SIZE >> level;
+        hidden = chunk.isHidden(table);
+        if (hidden) {
+            hiddenConnectivity = chunk.getMaterial(0, 0, 0).isOpaque() ? ChunkConnectivity.NONE : ChunkConnectivity.ALL;
+            return null;
+        }
+        chunk.getPaddedBlocks(blockIDs, blockData);
+        ChunkSnapshotGroup.getPaddedMaterials(blockIDs, blockData, table, materials);
+        if (level == 0) {
+            return materials;
+        }
+        mesh.setScale(1 << level);
+        downsample(1 << level);
+        return detailMaterials;
+    }
+
+    private void downsample(int scale) {
+        final int materialCount = table.getMaterialCount();
+        if (materialCounts.length < materialCount) {
+            materialCounts = new int[materialCount];
+        }
+        final int air = table.getIndex((short) 0, (short) 0);
+        for (int cy = -1; cy <= size; cy++) {
+            for (int cz = -1; cz <= size; cz++) {
+                for (int cx = -1; cx <= size; cx++) {
+                    final int outside = isOutside(cx) + isOutside(cy) + isOutside(cz);
+                    final int index = ChunkSnapshotGroup.getPaddedIndex(cx, cy, cz, size);
+                    // Like for the full resolution, the edges and corners of the border are air
+                    detailMaterials[index] = outside > 1 ? air : downsample(cx, cy, cz, scale, outside == 1, air);
+                }
+            }
+        }
+    }
+
+    // Returns the material for the cell, which is a single layer of blocks from the neighbour for border cells
+    private int downsample(int cx, int cy, int cz, int scale, boolean border, int air) {
+        final int x0 = getStart(cx, scale);
+        final int y0 = getStart(cy, scale);
+        final int z0 = getStart(cz, scale);
+        final int x1 = getEnd(cx, scale);
+        final int y1 = getEnd(cy, scale);
+        final int z1 = getEnd(cz, scale);
+        final int max = Chunk.BLOCKS.SIZE - 1;
+        int visible = 0;
+        int opaque = 0;
+        boolean faceVisible = false;
+        int mostCommon = air;
+        int mostCommonCount = 0;
+        for (int y = y0; y < y1; y++) {
+            for (int z = z0; z < z1; z++) {
+                for (int x = x0; x < x1; x++) {
+                    final int material = materials[ChunkSnapshotGroup.getPaddedIndex(x, y, z)];
+                    if (!table.isVisible(material)) {
+                        continue;
+                    }
+                    visible++;
+                    if (table.isOpaque(material)) {
+                        opaque++;
+                    }
+                    faceVisible |= x == 0 || x == max || y == 0 || y == max || z == 0 || z == max;
+                    final int count = ++materialCounts[material];
+                    if (count > mostCommonCount) {
+                        mostCommon = material;
+                        mostCommonCount = count;
+                    }
+                }
+            }
+        }
+        // Reset the counts for the next cell
+        for (int y = y0; y < y1; y++) {
+            for (int z = z0; z < z1; z++) {
+                for (int x = x0; x < x1; x++) {
+                    materialCounts[materials[ChunkSnapshotGroup.getPaddedIndex(x, y, z)]] = 0;
+                }
+            }
+        }
+        final int volume = (x1 - x0) * (y1 - y0) * (z1 - z0);
+        if (border) {
+            return opaque == volume ? mostCommon : air;
+        }
+        return visible * 2 >= volume || faceVisible ? mostCommon : air;
+    }
+
+    private int isOutside(int c) {
+        return c < 0 || c >= size ? 1 : 0;
+    }
+
+    // The first block of the cell on an axis, border cells being the single layer of blocks next to the chunk
+    private int getStart(int c, int scale) {
+        return c < 0 ? -1 : c >= size ? Chunk.BLOCKS.SIZE : c * scale;
+    }
+
+    private int getEnd(int c, int scale) {
+        return c < 0 ? 0 : c >= size ? Chunk.BLOCKS.SIZE + 1 : (c + 1) * scale;
+    }
+
+    /**
+     * Returns the number of cells per side of the grid from the last call to {@link #prepare(ChunkSnapshotGroup)}, which is the chunk size divided by the scale of the level of detail.
+     *
+     * @return The size of the grid
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Computes the connectivity of the faces of the chunk from the last call to {@link #prepare(ChunkSnapshotGroup)}, for occlusion culling.
+     *
+     * @return The connectivity of the chunk
+     * @see org.spoutcraft.client.nterface.culling.ChunkConnectivity#compute(int[], MaterialTable)
+     */
+    public long computeConnectivity() {
+        return hidden ? hiddenConnectivity : connectivity.compute(materials, table);
+    }
+
+    /**
+     * Returns the padded block IDs from the last call to {@link #prepare(ChunkSnapshotGroup)}.
+     *
+     * @return The padded block IDs
+     */
+    public short[] getBlockIDs() {
+        return blockIDs;
+    }
+
+    /**
+     * Returns the padded block data from the last call to {@link #prepare(ChunkSnapshotGroup)}.
+     *
+     * @return The padded block data
+     */
+    public short[] getBlockData() {
+        return blockData;
+    }
+
+    /**
+     * Returns the material table for the indices from the last call to {@link #prepare(ChunkSnapshotGroup)}.
+     *
+     * @return The material table
+     */
+    public MaterialTable getTable() {
+        return table;
+    }
+
+    /**
+     * Returns a scratch array of faces, one per block of a slice of the chunk, for the meshers working by slice. Its content is left from the last use.
+     *
+     * @return The slice faces
+     */
+    public BlockFace[] getSliceFaces() {
+        return sliceFaces;
+    }
+
+    /**
+     * Returns a scratch array of material indices, one per block of a slice of the chunk, for the meshers working by slice. Its content is left from the last use.
+     *
+     * @return The slice materials
+     */
+    public int[] getSliceMaterials() {
+        return sliceMaterials;
+    }
+
+    /**
+     * Returns the output mesh.
+     *
+     * @return The mesh
+     */
+    public PackedChunkMesh getMesh() {
+        return mesh;
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The executors which can run the {@link org.spoutcraft.client.nterface.mesh.ParallelChunkMesher} tasks.
+ */
+public enum ChunkMeshEngine {
+    /**
+     * A work stealing fork-join pool.
+     */
+    FORK_JOIN {
+        @Override
+        public ExecutorService createExecutor(int threads) {
+            return new ForkJoinPool(threads);
+        }
+    },
+    /**
+     * A fixed size thread pool, with a shared task queue. The threads time out when idle.
+     */
+    FIXED {
+        @Override
+        public ExecutorService createExecutor(int threads) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                    60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    },
+    /**
+     * Runs the tasks on the calling thread, as they're submitted. The thread count is ignored. Mostly useful for testing.
+     */
+    CALLER_RUNS {
+        @Override
+        public ExecutorService createExecutor(int threads) {
+            return new CallerRunsExecutor();
+        }
+    };
+
+    /**
+     * Creates a new executor for this engine.
+     *
+     * @param threads The number of threads to use
+     * @return The new executor
+     */
+    public abstract ExecutorService createExecutor(int threads);
+
+    /**
+     * Returns the engine for the name, which is case insensitive, or null if there's no such engine.
+     *
+     * @param name The name of the engine
+     * @return The engine, or null
+     */
+    public static ChunkMeshEngine get(String name) {
+        try {
+            return valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private static class CallerRunsExecutor extends AbstractExecutorService {
+        private volatile boolean shutdown = false;
+
+        @Override
+        public void execute(Runnable command) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Executor has been shut down");
+            }
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return shutdown;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.flowpowered.math.imaginary.Quaternionf;
+import com.flowpowered.math.vector.Vector3f;
+import com.flowpowered.math.vector.Vector3i;
+
+import org.spoutcraft.client.nterface.Interface;
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ * Orders the pending chunk meshing tasks so that the chunks the camera can see are meshed first, closest first. The chunks outside of the view frustum follow, also closest first. There's at most one
+ * pending and one running task per chunk position: scheduling a new one cancels the pending and running ones, since they're superseded, and a pending task won't run until the running one for the
+ * same position is done. The priorities are computed when scheduling and when calling {@link #reprioritize(Vector3f, Quaternionf)}, which should be done on the interface thread, as the frustum
+ * isn't thread safe. Running the tasks can be done from any thread.
+ */
+class ChunkMeshScheduler {
+    private final Interface nterface;
+    private final Map<Vector3i, ScheduledTask> pending = new HashMap<>();
+    private final Map<Vector3i, ScheduledTask> running = new HashMap<>();
+    private final PriorityQueue<ScheduledTask> queue = new PriorityQueue<>();
+    private final Lock lock = new ReentrantLock();
+    private Vector3f cameraPosition = Vector3f.ZERO;
+    private Quaternionf cameraRotation = Quaternionf.IDENTITY;
+    private long nextSequence = 0;
+
+    /**
+     * Constructs a new scheduler.
+     *
+     * @param nterface The interface, for the frustum visibility of the chunks (optional, all chunks are considered visible without it)
+     */
+    ChunkMeshScheduler(Interface nterface) {
+        this.nterface = nterface;
+    }
+
+    /**
+     * Schedules the task for the chunk at the position, cancelling the pending and running tasks for the same position, if any. Running tasks are only flagged as cancelled, it's up to them to check
+     * {@link java.util.concurrent.Future#isCancelled()} and stop early. Returns false if the task replaced a pending one, in which case it'll run in its place, else a call to {@link #runNext()} has to
+     * be made for it.
+     *
+     * @param position The chunk position, in chunk coordinates
+     * @param task The meshing task
+     * @return Whether or not the task needs a new call to {@link #runNext()}
+     */
+    boolean schedule(Vector3i position, RunnableFuture<?> task) {
+        final ScheduledTask scheduled = new ScheduledTask(position, task);
+        lock.lock();
+        try {
+            scheduled.sequence = nextSequence++;
+            updatePriority(scheduled);
+            final ScheduledTask superseded = pending.put(position, scheduled);
+            final ScheduledTask stale = running.get(position);
+            if (stale != null) {
+                stale.task.cancel(false);
+            }
+            queue.add(scheduled);
+            if (superseded != null) {
+                queue.remove(superseded);
+                superseded.task.cancel(false);
+                return false;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the task with the highest priority, skipping those for which a task for the same position is already running. Returns true if a task for the same position as the one that was run became
+     * runnable in the meantime, in which case another call to this method has to be made for it.
+     *
+     * @return Whether or not another call is needed
+     */
+    boolean runNext() {
+        final ScheduledTask scheduled;
+        lock.lock();
+        try {
+            scheduled = pollRunnable();
+            if (scheduled == null) {
+                return false;
+            }
+            running.put(scheduled.position, scheduled);
+        } finally {
+            lock.unlock();
+        }
+        // Futures don't throw, failures are reported when getting the result
+        scheduled.task.run();
+        lock.lock();
+        try {
+            running.remove(scheduled.position);
+            return pending.containsKey(scheduled.position);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ScheduledTask pollRunnable() {
+        List<ScheduledTask> deferred = null;
+        ScheduledTask scheduled;
+        while ((scheduled = queue.poll()) != null) {
+            if (!running.containsKey(scheduled.position)) {
+                pending.remove(scheduled.position);
+                break;
+            }
+            // Wait for the running task to be done before starting a new one
+            if (deferred == null) {
+                deferred = new ArrayList<>();
+            }
+            deferred.add(scheduled);
+        }
+        if (deferred != null) {
+            queue.addAll(deferred);
+        }
+        return scheduled;
+    }
+
+    /**
+     * Recomputes the priorities of the pending tasks for the camera position and rotation. Does nothing if the camera hasn't moved since the last call.
+     *
+     * @param position The camera position
+     * @param rotation The camera rotation
+     */
+    void reprioritize(Vector3f position, Quaternionf rotation) {
+        lock.lock();
+        try {
+            if (position.equals(cameraPosition) && rotation.equals(cameraRotation)) {
+                return;
+            }
+            cameraPosition = position;
+            cameraRotation = rotation;
+            if (queue.isEmpty()) {
+                return;
+            }
+            // The priorities are changed in place, so the queue has to be rebuilt
+            queue.clear();
+            for (ScheduledTask scheduled : pending.values()) {
+                updatePriority(scheduled);
+                queue.add(scheduled);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Cancels and removes all the pending tasks.
+     */
+    void clear() {
+        lock.lock();
+        try {
+            for (ScheduledTask scheduled : queue) {
+                scheduled.task.cancel(false);
+            }
+            queue.clear();
+            pending.clear();
+            for (ScheduledTask scheduled : running.values()) {
+                scheduled.task.cancel(false);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of pending tasks, not counting the running ones.
+     *
+     * @return The pending task count
+     */
+    int size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void updatePriority(ScheduledTask scheduled) {
+        final Vector3i blockPosition = scheduled.position.mul(Chunk.BLOCKS.SIZE);
+        scheduled.visible = nterface == null || nterface.isChunkVisible(blockPosition);
+        // Distance from the camera to the center of the chunk
+        final float halfSize = Chunk.BLOCKS.SIZE / 2f;
+        final float dx = blockPosition.getX() + halfSize - cameraPosition.getX();
+        final float dy = blockPosition.getY() + halfSize - cameraPosition.getY();
+        final float dz = blockPosition.getZ() + halfSize - cameraPosition.getZ();
+        scheduled.distanceSquared = dx * dx + dy * dy + dz * dz;
+    }
+
+    private static class ScheduledTask implements Comparable<ScheduledTask> {
+        private final Vector3i position;
+        private final RunnableFuture<?> task;
+        private long sequence;
+        private boolean visible;
+        private float distanceSquared;
+
+        private ScheduledTask(Vector3i position, RunnableFuture<?> task) {
+            this.position = position;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(ScheduledTask other) {
+            // Visible chunks first, then the closest, then the oldest
+            if (visible != other.visible) {
+                return visible ? -1 : 1;
+            }
+            final int distance = Float.compare(distanceSquared, other.distanceSquared);
+            if (distance != 0) {
+                return distance;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
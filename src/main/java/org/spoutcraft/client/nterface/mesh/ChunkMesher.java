@@ -28,10 +28,10 @@ package org.spoutcraft.client.nterface.mesh;
  */
 public interface ChunkMesher {
     /**
-     * Converts the chunk snapshot group to a mesh.
+     * Converts the chunk snapshot group to a packed mesh, stored in the buffers' mesh.
      *
      * @param chunk The chunk snapshot group
-     * @return The mesh
+     * @param buffers The scratch buffers to use, see {@link org.spoutcraft.client.nterface.mesh.ChunkMeshBuffers#getMesh()} for the output
      */
-    public Mesh mesh(ChunkSnapshotGroup chunk);
+    public void mesh(ChunkSnapshotGroup chunk, ChunkMeshBuffers buffers);
 }
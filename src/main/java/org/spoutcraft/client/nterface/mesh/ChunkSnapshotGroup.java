@@ -23,41 +23,107 @@
  */
 package org.spoutcraft.client.nterface.mesh;
 
+import java.util.Arrays;
+
 import com.flowpowered.math.vector.Vector3i;
 
+import org.spoutcraft.client.universe.block.BlockFaces;
 import org.spoutcraft.client.universe.block.material.Material;
+import org.spoutcraft.client.universe.block.material.MaterialTable;
 import org.spoutcraft.client.universe.block.material.Materials;
 import org.spoutcraft.client.universe.snapshot.ChunkSnapshot;
-import org.spoutcraft.client.universe.snapshot.WorldSnapshot;
+import org.spoutcraft.client.universe.snapshot.ChunkSnapshot.Version;
+import org.spoutcraft.client.universe.snapshot.WorldSnapshot.ChunkMap;
 import org.spoutcraft.client.universe.world.Chunk;
 
 /**
  * A chunk and it's immediate neighbours (BTNESW), used for meshing the chunk including it's edge blocks with proper occlusion.
  */
 public class ChunkSnapshotGroup {
-    private final ChunkSnapshot middle;
-    private final ChunkSnapshot top;
-    private final ChunkSnapshot bottom;
-    private final ChunkSnapshot north;
-    private final ChunkSnapshot east;
-    private final ChunkSnapshot south;
-    private final ChunkSnapshot west;
+    /**
+     * The size on each axis of the padded block arrays, which include the blocks of the chunk and the one block border around it.
+     */
+    public static final int PADDED_SIZE = Chunk.BLOCKS.SIZE + 2;
+    /**
+     * The number of blocks in the padded block arrays.
+     */
+    public static final int PADDED_VOLUME = PADDED_SIZE * PADDED_SIZE * PADDED_SIZE;
+    /**
+     * The highest level of detail that can be used, for which the chunk is a single block.
+     */
+    public static final int MAX_DETAIL_LEVEL = Chunk.BLOCKS.BITS;
+    private static final BlockFaces[] AXES = {BlockFaces.NS, BlockFaces.BT, BlockFaces.EW};
+    // The states of the chunks, acquired for the life of the group so the reads don't touch the shared reader counts
+    private final Version middle;
+    private final Version top;
+    private final Version bottom;
+    private final Version north;
+    private final Version east;
+    private final Version south;
+    private final Version west;
+    private final int detailLevel;
+    private boolean released = false;
 
     /**
-     * Constructs a new snapshot group from the middle chunk snapshot and the world snapshot. The world snapshot from the chunk will be used to source the neighbouring chunks (if they exist).
+     * Constructs a new snapshot group from the middle chunk snapshot and the world snapshot. The world snapshot from the chunk will be used to source the neighbouring chunks (if they exist). The
+     * current states of the chunks are acquired until the group is released, see {@link #release()}.
      *
      * @param middle The middle chunk
      */
     public ChunkSnapshotGroup(ChunkSnapshot middle) {
-        this.middle = middle;
+        this(middle, 0);
+    }
+
+    /**
+     * Constructs a new snapshot group from the middle chunk snapshot and the world snapshot, to be meshed at the level of detail. Level 0 is the full resolution, and each level halves it on each
+     * axis, see {@link org.spoutcraft.client.nterface.mesh.ChunkMeshBuffers#prepare(ChunkSnapshotGroup)}. The current states of the chunks are acquired until the group is released, see {@link
+     * #release()}.
+     *
+     * @param middle The middle chunk
+     * @param detailLevel The level of detail, from 0 to {@link #MAX_DETAIL_LEVEL}
+     */
+    public ChunkSnapshotGroup(ChunkSnapshot middle, int detailLevel) {
+        if (detailLevel < 0 || detailLevel > MAX_DETAIL_LEVEL) {
+            throw new IllegalArgumentException("Level of detail must be between 0 and " + MAX_DETAIL_LEVEL + ": " + detailLevel);
+        }
+        this.detailLevel = detailLevel;
         final Vector3i position = middle.getPosition();
-        final WorldSnapshot world = middle.getWorld();
-        top = world.getChunk(position.add(Vector3i.UP));
-        bottom = world.getChunk(position.sub(Vector3i.UP));
-        north = world.getChunk(position.sub(Vector3i.RIGHT));
-        south = world.getChunk(position.add(Vector3i.RIGHT));
-        east = world.getChunk(position.sub(Vector3i.FORWARD));
-        west = world.getChunk(position.add(Vector3i.FORWARD));
+        final ChunkMap chunks = middle.getWorld().acquireChunks();
+        try {
+            this.middle = middle.acquireVersion();
+            top = acquireVersion(chunks.getChunk(position.add(Vector3i.UP)));
+            bottom = acquireVersion(chunks.getChunk(position.sub(Vector3i.UP)));
+            north = acquireVersion(chunks.getChunk(position.sub(Vector3i.RIGHT)));
+            south = acquireVersion(chunks.getChunk(position.add(Vector3i.RIGHT)));
+            east = acquireVersion(chunks.getChunk(position.sub(Vector3i.FORWARD)));
+            west = acquireVersion(chunks.getChunk(position.add(Vector3i.FORWARD)));
+        } finally {
+            chunks.release();
+        }
+    }
+
+    /**
+     * Releases the states of the chunks acquired on construction, once done meshing. The group must not be read afterwards. Releasing more than once has no effect.
+     */
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        for (Version version : new Version[]{middle, top, bottom, north, east, south, west}) {
+            if (version != null) {
+                version.release();
+            }
+        }
+    }
+
+    /**
+     * Returns the level of detail to mesh the chunk at, 0 being the full resolution.
+     *
+     * @return The level of detail
+     */
+    public int getDetailLevel() {
+        return detailLevel;
     }
 
     /**
@@ -96,4 +162,143 @@ public class ChunkSnapshotGroup {
         }
         return middle.getMaterial(x, y, z);
     }
+
+    /**
+     * Copies the block IDs and data of the chunk and of its one block border, taken from the neighbours, into padded arrays of {@link #PADDED_VOLUME} elements. Blocks are indexed using {@link
+     * #getPaddedIndex(int, int, int)}. Border blocks from missing neighbours, and the edges and corners of the border (which aren't part of the direct neighbours), are set to 0 (air). This is
+     * much faster than accessing each block individually.
+     *
+     * @param blockIDs The destination array for the block IDs
+     * @param blockData The destination array for the block data
+     */
+    public void getPaddedBlocks(short[] blockIDs, short[] blockData) {
+        Arrays.fill(blockIDs, 0, PADDED_VOLUME, (short) 0);
+        Arrays.fill(blockData, 0, PADDED_VOLUME, (short) 0);
+        final int size = Chunk.BLOCKS.SIZE;
+        final int max = size - 1;
+        middle.copyBlocks(0, 0, 0, size, size, size, 1, 1, 1, blockIDs, blockData, PADDED_SIZE);
+        if (north != null) {
+            north.copyBlocks(max, 0, 0, size, size, size, 1 - size, 1, 1, blockIDs, blockData, PADDED_SIZE);
+        }
+        if (south != null) {
+            south.copyBlocks(0, 0, 0, 1, size, size, size + 1, 1, 1, blockIDs, blockData, PADDED_SIZE);
+        }
+        if (bottom != null) {
+            bottom.copyBlocks(0, max, 0, size, size, size, 1, 1 - size, 1, blockIDs, blockData, PADDED_SIZE);
+        }
+        if (top != null) {
+            top.copyBlocks(0, 0, 0, size, 1, size, 1, size + 1, 1, blockIDs, blockData, PADDED_SIZE);
+        }
+        if (east != null) {
+            east.copyBlocks(0, 0, max, size, size, size, 1, 1, 1 - size, blockIDs, blockData, PADDED_SIZE);
+        }
+        if (west != null) {
+            west.copyBlocks(0, 0, 0, size, size, 1, 1, 1, size + 1, blockIDs, blockData, PADDED_SIZE);
+        }
+    }
+
+    /**
+     * Returns true if the middle chunk is uniform (see {@link org.spoutcraft.client.universe.snapshot.ChunkSnapshot#isUniform()}) and none of its faces can be visible, which means it has no mesh.
+     * This is the case for chunks of air surrounded by air, and of solid blocks enclosed by solid blocks. Only the border blocks of the neighbours are read, so this is much cheaper than meshing.
+     *
+     * @param table The material table to use
+     * @return Whether or not the chunk has no visible faces
+     */
+    public boolean isHidden(MaterialTable table) {
+        if (!middle.isUniform()) {
+            return false;
+        }
+        final int material = getMaterialIndex(table, middle, 0, 0, 0);
+        // Faces between the blocks of the chunk
+        for (BlockFaces axis : AXES) {
+            if (table.getFace(material, material, axis) != null) {
+                return false;
+            }
+        }
+        // Faces with the blocks of the neighbours
+        final int max = Chunk.BLOCKS.SIZE - 1;
+        return !hasBorderFace(table, material, north, 0, max, true) && !hasBorderFace(table, material, south, 0, 0, false)
+                && !hasBorderFace(table, material, bottom, 1, max, true) && !hasBorderFace(table, material, top, 1, 0, false)
+                && !hasBorderFace(table, material, east, 2, max, true) && !hasBorderFace(table, material, west, 2, 0, false);
+    }
+
+    // Checks the faces between the chunk and the border of the neighbour on the axis, the neighbour being either behind or in front of the chunk
+    private static boolean hasBorderFace(MaterialTable table, int material, Version neighbour, int axis, int border, boolean behind) {
+        final BlockFaces faces = AXES[axis];
+        if (neighbour == null || neighbour.isUniform()) {
+            // Missing neighbours are air
+            final int other = neighbour == null ? table.getIndex((short) 0, (short) 0) : getMaterialIndex(table, neighbour, 0, 0, 0);
+            return (behind ? table.getFace(other, material, faces) : table.getFace(material, other, faces)) != null;
+        }
+        for (int u = 0; u < Chunk.BLOCKS.SIZE; u++) {
+            for (int v = 0; v < Chunk.BLOCKS.SIZE; v++) {
+                final int other;
+                switch (axis) {
+                    case 0:
+                        other = getMaterialIndex(table, neighbour, border, u, v);
+                        break;
+                    case 1:
+                        other = getMaterialIndex(table, neighbour, u, border, v);
+                        break;
+                    default:
+                        other = getMaterialIndex(table, neighbour, u, v, border);
+                }
+                if ((behind ? table.getFace(other, material, faces) : table.getFace(material, other, faces)) != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Version acquireVersion(ChunkSnapshot chunk) {
+        return chunk != null ? chunk.acquireVersion() : null;
+    }
+
+    private static int getMaterialIndex(MaterialTable table, Version chunk, int x, int y, int z) {
+        return table.getIndex(chunk.getBlockID(x, y, z), Chunk.SUB_ID_MASK.extract(chunk.getBlockData(x, y, z)));
+    }
+
+    /**
+     * Returns the index in the padded block arrays of the block at the position, in chunk coordinates. Each coordinate can range from -1 to the chunk size, both inclusive.
+     *
+     * @param x The x coordinate of the position
+     * @param y The y coordinate of the position
+     * @param z The z coordinate of the position
+     * @return The index in the padded arrays
+     * @see #getPaddedBlocks(short[], short[])
+     */
+    public static int getPaddedIndex(int x, int y, int z) {
+        return ((y + 1) * PADDED_SIZE + z + 1) * PADDED_SIZE + x + 1;
+    }
+
+    /**
+     * Returns the index in padded arrays for a grid of the size, plus the one cell border, of the cell at the position. Each coordinate can range from -1 to the size, both inclusive. This is used
+     * for the downsampled grids of the lower levels of detail.
+     *
+     * @param x The x coordinate of the position
+     * @param y The y coordinate of the position
+     * @param z The z coordinate of the position
+     * @param size The size of the grid, without the border
+     * @return The index in the padded arrays
+     * @see #getPaddedIndex(int, int, int)
+     */
+    public static int getPaddedIndex(int x, int y, int z, int size) {
+        final int paddedSize = size + 2;
+        return ((y + 1) * paddedSize + z + 1) * paddedSize + x + 1;
+    }
+
+    /**
+     * Converts padded block IDs and data, as copied by {@link #getPaddedBlocks(short[], short[])}, to material indices in the table.
+     *
+     * @param blockIDs The padded block IDs
+     * @param blockData The padded block data
+     * @param table The material table to get the indices from
+     * @param materials The destination array for the material indices
+     */
+    public static void getPaddedMaterials(short[] blockIDs, short[] blockData, MaterialTable table, int[] materials) {
+        for (int i = 0; i < PADDED_VOLUME; i++) {
+            materials[i] = table.getIndex(blockIDs[i], Chunk.SUB_ID_MASK.extract(blockData[i]));
+        }
+    }
 }
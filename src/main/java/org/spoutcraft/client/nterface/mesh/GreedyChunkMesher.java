@@ -0,0 +1,152 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import org.spoutcraft.client.universe.block.BlockFace;
+import org.spoutcraft.client.universe.block.BlockFaces;
+import org.spoutcraft.client.universe.block.material.MaterialTable;
+
+/**
+ * A chunk mesher which merges the visible faces. Voxels are meshed as blocks, with the same occlusion rules as the {@link org.spoutcraft.client.nterface.mesh.StandardChunkMesher}. For each slice of
+ * the chunk along each axis, the coplanar visible faces with the same direction and material are merged into maximal rectangles, one quad each, which greatly reduces the vertex count for uniform
+ * terrain.
+ */
+public class GreedyChunkMesher implements ChunkMesher {
+    // The faces for each axis (x, y, z), the first one uses the front facing winding order
+    private static final BlockFaces[] AXIS_FACES = {BlockFaces.NS, BlockFaces.BT, BlockFaces.EW};
+
+    @Override
+    public void mesh(ChunkSnapshotGroup chunk, ChunkMeshBuffers buffers) {
+        // TODO: add textures
+        final int[] materials = buffers.prepare(chunk);
+        if (materials == null) {
+            // Nothing can be visible in the chunk
+            return;
+        }
+        final MaterialTable table = buffers.getTable();
+        final PackedChunkMesh mesh = buffers.getMesh();
+        // Smaller for the lower levels of detail, for which the mesh takes care of the scaling
+        final int size = buffers.getSize();
+        // The visible face and its material for each block of the slice, indexed as v * size + u. Every index in the slice is written before being read
+        final BlockFace[] faces = buffers.getSliceFaces();
+        final int[] faceMaterials = buffers.getSliceMaterials();
+        int index = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            final BlockFaces axisFaces = AXIS_FACES[axis];
+            // Each slice is the plane between the blocks at s - 1 and s on the axis
+            for (int s = 0; s <= size; s++) {
+                for (int v = 0; v < size; v++) {
+                    for (int u = 0; u < size; u++) {
+                        final int back = materials[getPaddedIndex(axis, s - 1, u, v, size)];
+                        final int front = materials[getPaddedIndex(axis, s, u, v, size)];
+                        final BlockFace face = table.getFace(back, front, axisFaces);
+                        faces[v * size + u] = face;
+                        faceMaterials[v * size + u] = face == axisFaces.get(1) ? back : front;
+                    }
+                }
+                for (int v = 0; v < size; v++) {
+                    for (int u = 0; u < size; ) {
+                        final int start = v * size + u;
+                        final BlockFace face = faces[start];
+                        if (face == null) {
+                            u++;
+                            continue;
+                        }
+                        final int material = faceMaterials[start];
+                        // Grow along u as long as the faces match
+                        int width = 1;
+                        while (u + width < size && matches(faces, faceMaterials, start + width, face, material)) {
+                            width++;
+                        }
+                        // Then grow along v as long as entire rows match
+                        int height = 1;
+                        grow:
+                        while (v + height < size) {
+                            final int row = start + height * size;
+                            for (int i = 0; i < width; i++) {
+                                if (!matches(faces, faceMaterials, row + i, face, material)) {
+                                    break grow;
+                                }
+                            }
+                            height++;
+                        }
+                        // Clear the merged faces
+                        for (int j = 0; j < height; j++) {
+                            for (int i = 0; i < width; i++) {
+                                faces[start + j * size + i] = null;
+                            }
+                        }
+                        if (face == axisFaces.get(0)) {
+                            mesh.addIndices(index + 3, index + 2, index + 1, index + 2, index, index + 1);
+                        } else {
+                            mesh.addIndices(index + 3, index + 1, index + 2, index + 2, index + 1, index);
+                        }
+                        addQuad(mesh, face, axis, s, u, v, u + width, v + height);
+                        index += 4;
+                        u += width;
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean matches(BlockFace[] faces, int[] faceMaterials, int index, BlockFace face, int material) {
+        return faces[index] == face && faceMaterials[index] == material;
+    }
+
+    // Same vertex order as the standard mesher, for each axis
+    private static void addQuad(PackedChunkMesh mesh, BlockFace face, int axis, int s, int u0, int v0, int u1, int v1) {
+        switch (axis) {
+            case 0:
+                mesh.addVertex(s, u1, v1, face);
+                mesh.addVertex(s, u1, v0, face);
+                mesh.addVertex(s, u0, v1, face);
+                mesh.addVertex(s, u0, v0, face);
+                break;
+            case 1:
+                mesh.addVertex(u0, s, v0, face);
+                mesh.addVertex(u1, s, v0, face);
+                mesh.addVertex(u0, s, v1, face);
+                mesh.addVertex(u1, s, v1, face);
+                break;
+            default:
+                mesh.addVertex(u0, v1, s, face);
+                mesh.addVertex(u1, v1, s, face);
+                mesh.addVertex(u0, v0, s, face);
+                mesh.addVertex(u1, v0, s, face);
+        }
+    }
+
+    // Converts slice coordinates to a padded index: x axis is (s, u, v), y axis is (u, s, v) and z axis is (u, v, s)
+    private static int getPaddedIndex(int axis, int s, int u, int v, int size) {
+        switch (axis) {
+            case 0:
+                return ChunkSnapshotGroup.getPaddedIndex(s, u, v, size);
+            case 1:
+                return ChunkSnapshotGroup.getPaddedIndex(u, s, v, size);
+            default:
+                return ChunkSnapshotGroup.getPaddedIndex(u, v, s, size);
+        }
+    }
+}
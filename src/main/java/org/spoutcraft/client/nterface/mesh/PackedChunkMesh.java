@@ -0,0 +1,189 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+
+import org.spout.renderer.api.data.VertexAttribute;
+import org.spout.renderer.api.data.VertexAttribute.DataType;
+import org.spout.renderer.api.data.VertexAttribute.UploadMode;
+import org.spout.renderer.api.data.VertexData;
+
+import org.spoutcraft.client.universe.block.BlockFace;
+
+/**
+ * A compact mesh for chunks. Vertex positions are stored in chunk coordinates as unsigned bytes and normals as signed bytes, derived from the block face, for 6 bytes per vertex instead of the 24
+ * of float positions and normals. Both are converted to floats by the GPU when uploaded, so shaders are unaffected. When built, all the vertex data is copied once into a
+ * single direct buffer, shared by the attributes.
+ */
+public class PackedChunkMesh {
+    /**
+     * The number of bytes used by each vertex.
+     */
+    public static final int VERTEX_SIZE = 6;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final byte NORMAL_LENGTH = Byte.MAX_VALUE;
+    private byte[] positions = new byte[INITIAL_CAPACITY * 3];
+    private byte[] normals = new byte[INITIAL_CAPACITY * 3];
+    private int vertexCount = 0;
+    private final TIntList indices = new TIntArrayList();
+    private int scale = 1;
+
+    /**
+     * Sets the scale applied to the coordinates of the vertices added from now on. This is used for the lower levels of detail, which are meshed from downsampled grids of larger blocks. It's reset
+     * to 1 when the mesh is cleared.
+     *
+     * @param scale The scale of the coordinates
+     */
+    public void setScale(int scale) {
+        this.scale = scale;
+    }
+
+    /**
+     * Adds a vertex to the mesh. The coordinates are multiplied by the scale (see {@link #setScale(int)}).
+     *
+     * @param x The x coordinate, from 0 to 255 once scaled
+     * @param y The y coordinate, from 0 to 255 once scaled
+     * @param z The z coordinate, from 0 to 255 once scaled
+     * @param face The face the vertex belongs to, which is used for the normal
+     * @return The index of the vertex
+     */
+    public int addVertex(int x, int y, int z, BlockFace face) {
+        if (vertexCount * 3 == positions.length) {
+            positions = Arrays.copyOf(positions, positions.length * 2);
+            normals = Arrays.copyOf(normals, normals.length * 2);
+        }
+        final int i = vertexCount * 3;
+        positions[i] = (byte) (x * scale);
+        positions[i + 1] = (byte) (y * scale);
+        positions[i + 2] = (byte) (z * scale);
+        final Vector3i normal = face.getOffset();
+        normals[i] = (byte) (normal.getX() * NORMAL_LENGTH);
+        normals[i + 1] = (byte) (normal.getY() * NORMAL_LENGTH);
+        normals[i + 2] = (byte) (normal.getZ() * NORMAL_LENGTH);
+        return vertexCount++;
+    }
+
+    /**
+     * Adds the indices of two triangles.
+     */
+    public void addIndices(int i0, int i1, int i2, int i3, int i4, int i5) {
+        indices.add(i0);
+        indices.add(i1);
+        indices.add(i2);
+        indices.add(i3);
+        indices.add(i4);
+        indices.add(i5);
+    }
+
+    /**
+     * Returns the number of vertices in the mesh.
+     *
+     * @return The vertex count
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * Returns the position of the vertex.
+     *
+     * @param index The index of the vertex
+     * @return The vertex position
+     */
+    public Vector3i getPosition(int index) {
+        final int i = index * 3;
+        return new Vector3i(positions[i] & 0xFF, positions[i + 1] & 0xFF, positions[i + 2] & 0xFF);
+    }
+
+    /**
+     * Returns the index list for the mesh, which declares the triangle faces by winding order.
+     *
+     * @return The index list
+     */
+    public TIntList getIndices() {
+        return indices;
+    }
+
+    /**
+     * Returns the number of bytes of vertex and index data the mesh will upload once built.
+     *
+     * @return The size of the data, in bytes
+     */
+    public int getByteCount() {
+        return vertexCount * VERTEX_SIZE + indices.size() * 4;
+    }
+
+    /**
+     * Returns true if the mesh has no vertices.
+     *
+     * @return Whether or not the mesh is empty
+     */
+    public boolean isEmpty() {
+        return vertexCount == 0;
+    }
+
+    /**
+     * Clears the mesh so it can be reused, keeping the allocated storage.
+     */
+    public void clear() {
+        vertexCount = 0;
+        indices.clear();
+        scale = 1;
+    }
+
+    /**
+     * Builds the mesh into a {@link org.spout.renderer.api.data.VertexData} to be ready for rendering. The positions (attribute 0) and normals (attribute 1) are slices of a single direct buffer.
+     *
+     * @return The vertex data for the built mesh
+     */
+    public VertexData build() {
+        final int componentsLength = vertexCount * 3;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(vertexCount * VERTEX_SIZE).order(ByteOrder.nativeOrder());
+        buffer.put(positions, 0, componentsLength);
+        buffer.put(normals, 0, componentsLength);
+        final VertexData vertexData = new VertexData();
+        final VertexAttribute positionsAttribute = new VertexAttribute("positions", DataType.UNSIGNED_BYTE, 3, UploadMode.TO_FLOAT);
+        positionsAttribute.setData(slice(buffer, 0, componentsLength));
+        vertexData.addAttribute(0, positionsAttribute);
+        final VertexAttribute normalsAttribute = new VertexAttribute("normals", DataType.BYTE, 3, UploadMode.TO_FLOAT_NORMALIZE);
+        normalsAttribute.setData(slice(buffer, componentsLength, componentsLength));
+        vertexData.addAttribute(1, normalsAttribute);
+        vertexData.getIndices().addAll(indices);
+        return vertexData;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        buffer.limit(offset + length);
+        buffer.position(offset);
+        return buffer.slice().order(ByteOrder.nativeOrder());
+    }
+}
@@ -23,168 +23,448 @@
  */
 package org.spoutcraft.client.nterface.mesh;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.flowpowered.math.vector.Vector3f;
 
 import org.spout.renderer.api.data.VertexData;
 import org.spout.renderer.api.gl.VertexArray;
 import org.spout.renderer.api.model.Model;
 
 import org.spoutcraft.client.nterface.Interface;
+import org.spoutcraft.client.nterface.culling.ChunkConnectivity;
+import org.spoutcraft.client.nterface.render.BoundedResourcePool;
+import org.spoutcraft.client.nterface.render.BoundedResourcePool.Allocator;
+import org.spoutcraft.client.nterface.snapshot.CameraSnapshot;
 import org.spoutcraft.client.universe.snapshot.ChunkSnapshot;
 
 /**
  * Meshes chunks in parallel. Returns chunk models which may not be rendered when {@link org.spoutcraft.client.nterface.mesh.ParallelChunkMesher.ChunkModel#render()} is called, this is happens when
- * the meshing is in progress. Parallelism is achieved using a {@link java.util.concurrent.ForkJoinPool} with default thread count. Chunks are meshed using the provided {@link
- * org.spoutcraft.client.nterface.mesh.ChunkMesher}. An optional {@link org.spoutcraft.client.nterface.Interface} can be passed to the constructor for chunk culling.
+ * the meshing is in progress. Parallelism is achieved using the executor of a {@link org.spoutcraft.client.nterface.mesh.ChunkMeshEngine}. Chunks are meshed using the provided {@link
+ * org.spoutcraft.client.nterface.mesh.ChunkMesher}, with {@link org.spoutcraft.client.nterface.mesh.ChunkMeshBuffers} reused by each thread. An optional {@link org.spoutcraft.client.nterface.Interface} can be passed to the constructor for prioritizing
+ * the visible chunks.
+ * Pending chunks are meshed in order of visibility and distance to the camera, see {@link org.spoutcraft.client.nterface.mesh.ChunkMeshScheduler}. Completed meshes are uploaded to the GPU within a
+ * budget per frame, in the same order, see {@link #upload(int, long)}.
  *
  * @see org.spoutcraft.client.nterface.mesh.ParallelChunkMesher.ChunkModel
  */
 public class ParallelChunkMesher {
+    // The maximum number of bytes of vertex data retained by the vertex arrays kept for reuse
+    private static final long MAX_POOLED_VERTEX_BYTES = 16 * 1024 * 1024;
+    private static final Vector3f CHUNK_CENTER = new Vector3f(8, 8, 8);
     private final ChunkMesher mesher;
     private final Interface nterface;
-    private final ThreadPoolExecutor executor;
+    private final ExecutorService executor;
+    private final AtomicLong meshedCount = new AtomicLong();
+    private final ChunkMeshScheduler scheduler;
+    private final Runnable runNextTask = new Runnable() {
+        @Override
+        public void run() {
+            // There's one of these submitted per pending chunk, plus one when a chunk position with a running task has a pending one too
+            if (scheduler.runNext()) {
+                executor.execute(this);
+            }
+        }
+    };
+    // Vertex arrays are reused when chunks are remeshed or removed, they're only used from the interface thread
+    private final BoundedResourcePool<VertexArray> vertexArrays = new BoundedResourcePool<>(new Allocator<VertexArray>() {
+        @Override
+        public VertexArray allocate() {
+            final VertexArray vertexArray = nterface.getRenderer().getContext().newVertexArray();
+            vertexArray.create();
+            return vertexArray;
+        }
+
+        @Override
+        public void free(VertexArray vertexArray) {
+            vertexArray.destroy();
+        }
+    }, MAX_POOLED_VERTEX_BYTES);
+    // The models waiting on their mesh to be uploaded, and those ready for it this frame. They're only used from the interface thread
+    private final List<ChunkModel> uploads = new ArrayList<>();
+    private final List<ChunkModel> readyUploads = new ArrayList<>();
+    private final UploadComparator uploadComparator = new UploadComparator();
+    private final ThreadLocal<ChunkMeshBuffers> buffers = new ThreadLocal<ChunkMeshBuffers>() {
+        @Override
+        protected ChunkMeshBuffers initialValue() {
+            return new ChunkMeshBuffers();
+        }
+    };
 
     /**
      * Constructs a new parallel chunk mesher from the actual mesher.
      *
+     * @param nterface The interface, for the camera and frustum (optional)
      * @param mesher The chunk mesher
-     * @param nterface The interface, for culling chunk models (optional)
+     * @param engine The engine to run the meshing tasks with
+     * @param threads The number of threads for the engine
      */
-    public ParallelChunkMesher(Interface nterface, ChunkMesher mesher) {
+    public ParallelChunkMesher(Interface nterface, ChunkMesher mesher, ChunkMeshEngine engine, int threads) {
         this.nterface = nterface;
         this.mesher = mesher;
-        this.executor = new ThreadPoolExecutor(4, 4,
-                60L, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<Runnable>());
-        executor.allowCoreThreadTimeOut(true);
+        executor = engine.createExecutor(threads);
+        scheduler = new ChunkMeshScheduler(nterface);
     }
 
     /**
-     * Queues a chunk to be meshed, returning a chunk model which can be used normally. The chunk model will actually only renderer the chunk once meshing it complete.
+     * Queues a chunk to be meshed, returning a chunk model which can be used normally. The chunk model will actually only renderer the chunk once meshing it complete. If meshing for the same chunk
+     * position is pending or in progress, it is cancelled, as it's been superseded. This should be called from the interface thread.
      *
      * @param chunk The chunk to mesh
      * @return The chunk's model
      */
     public ChunkModel queue(ChunkSnapshot chunk) {
-        return new ChunkModel(executor.submit(new ChunkMeshTask(chunk)));
+        return queue(chunk, 0);
+    }
+
+    /**
+     * Queues a chunk to be meshed at the level of detail, see {@link #queue(org.spoutcraft.client.universe.snapshot.ChunkSnapshot)}. This should be called from the interface thread.
+     *
+     * @param chunk The chunk to mesh
+     * @param detailLevel The level of detail, see {@link org.spoutcraft.client.nterface.mesh.ChunkSnapshotGroup#getDetailLevel()}
+     * @return The chunk's model
+     */
+    public ChunkModel queue(ChunkSnapshot chunk, int detailLevel) {
+        final ChunkMeshTask task = new ChunkMeshTask(chunk, detailLevel);
+        if (scheduler.schedule(chunk.getPosition(), task.future)) {
+            executor.execute(runNextTask);
+        }
+        final ChunkModel model = new ChunkModel(task.future, detailLevel);
+        uploads.add(model);
+        return model;
+    }
+
+    /**
+     * Uploads the completed meshes to the GPU, visible chunks first, then the closest to the camera. Uploading stops once the mesh data uploaded exceeds the byte budget, or the time spent exceeds
+     * the time budget, and resumes on the next call. At least one mesh is uploaded per call, so this always progresses. Models only render their new mesh once it's uploaded, the previous model
+     * being rendered until then. This should be called once per frame from the interface thread, after culling and before rendering.
+     *
+     * @param byteBudget The maximum number of bytes of mesh data to upload
+     * @param timeBudget The maximum time to spend uploading, in nanoseconds
+     * @return The number of meshes uploaded
+     */
+    public int upload(int byteBudget, long timeBudget) {
+        // Collect the ready models, and drop those which are uploaded, destroyed, or superseded. The list is compacted in place
+        int kept = 0;
+        for (int i = 0; i < uploads.size(); i++) {
+            final ChunkModel model = uploads.get(i);
+            if (model.complete || model.mesh == null || model.mesh.isCancelled()) {
+                continue;
+            }
+            if (model.mesh.isDone()) {
+                readyUploads.add(model);
+            }
+            uploads.set(kept++, model);
+        }
+        uploads.subList(kept, uploads.size()).clear();
+        if (readyUploads.isEmpty()) {
+            return 0;
+        }
+        uploadComparator.camera = nterface != null ? nterface.getCameraSnapshot().getPosition() : Vector3f.ZERO;
+        Collections.sort(readyUploads, uploadComparator);
+        final long start = System.nanoTime();
+        int bytes = 0;
+        int uploaded = 0;
+        for (ChunkModel model : readyUploads) {
+            final int byteCount = model.getResult().byteCount;
+            if (uploaded > 0 && (bytes + byteCount > byteBudget || System.nanoTime() - start > timeBudget)) {
+                break;
+            }
+            model.updateMesh();
+            bytes += byteCount;
+            uploaded++;
+        }
+        readyUploads.clear();
+        return uploaded;
+    }
+
+    /**
+     * Returns the number of models waiting on their mesh to be completed or uploaded.
+     *
+     * @return The number of models waiting for an upload
+     */
+    public int getUploadPendingCount() {
+        return uploads.size();
+    }
+
+    /**
+     * Updates the meshing order of the pending chunks to match the latest camera snapshot, if the camera has moved. This should be called from the interface thread.
+     */
+    public void reprioritize() {
+        if (nterface == null) {
+            return;
+        }
+        final CameraSnapshot camera = nterface.getCameraSnapshot();
+        scheduler.reprioritize(camera.getPosition(), camera.getRotation());
+    }
+
+    /**
+     * Returns the number of chunks waiting to be meshed.
+     *
+     * @return The number of pending chunks
+     */
+    public int getPendingCount() {
+        return scheduler.size();
+    }
+
+    /**
+     * Returns the number of chunks meshed since the mesher was created. Superseded chunks which were cancelled before meshing aren't counted.
+     *
+     * @return The number of meshed chunks
+     */
+    public long getMeshedCount() {
+        return meshedCount.get();
+    }
+
+    /**
+     * Returns the pool of vertex arrays used by the chunk models. This should only be used from the interface thread.
+     *
+     * @return The vertex array pool
+     */
+    public BoundedResourcePool<VertexArray> getVertexArrayPool() {
+        return vertexArrays;
     }
 
     /**
-     * Shuts down the executor used for meshing, cancelling any meshing pending or active.
+     * Shuts down the executor used for meshing, cancelling any meshing pending or active, and destroys all the vertex arrays, pooled or still in use. The chunk models should be destroyed before, from the interface
+     * thread, which is also the one to call this from.
      */
     public void shutdown() {
+        scheduler.clear();
         executor.shutdownNow();
+        uploads.clear();
+        vertexArrays.clear();
     }
 
-    private class ChunkMeshTask implements Callable<VertexData> {
+    private class ChunkMeshTask implements Callable<ChunkMeshResult> {
         private final ChunkSnapshot toMesh;
+        private final int detailLevel;
+        private final RunnableFuture<ChunkMeshResult> future = new FutureTask<>(this);
 
-        private ChunkMeshTask(ChunkSnapshot toMesh) {
+        private ChunkMeshTask(ChunkSnapshot toMesh, int detailLevel) {
             this.toMesh = toMesh;
+            this.detailLevel = detailLevel;
         }
 
         @Override
-        public VertexData call() {
-            final Mesh mesh = mesher.mesh(new ChunkSnapshotGroup(toMesh));
-            if (mesh.isEmpty()) {
+        public ChunkMeshResult call() {
+            // The buffers are reused by the thread for the next chunk, only the built vertex data and the connectivity are kept
+            final ChunkMeshBuffers buffers = ParallelChunkMesher.this.buffers.get();
+            final ChunkSnapshotGroup group = new ChunkSnapshotGroup(toMesh, detailLevel);
+            try {
+                mesher.mesh(group, buffers);
+            } finally {
+                group.release();
+            }
+            meshedCount.incrementAndGet();
+            // Don't bother with the rest if the meshing was superseded while in progress
+            if (future.isCancelled()) {
                 return null;
             }
-            return mesh.build();
+            final long connectivity = buffers.computeConnectivity();
+            final PackedChunkMesh mesh = buffers.getMesh();
+            if (mesh.isEmpty()) {
+                return new ChunkMeshResult(null, 0, connectivity);
+            }
+            return new ChunkMeshResult(mesh.build(), mesh.getByteCount(), connectivity);
+        }
+    }
+
+    // Visible chunks first, then the closest ones
+    private static class UploadComparator implements Comparator<ChunkModel> {
+        private Vector3f camera;
+
+        @Override
+        public int compare(ChunkModel first, ChunkModel second) {
+            if (first.visible != second.visible) {
+                return first.visible ? -1 : 1;
+            }
+            return Float.compare(getDistanceSquared(first), getDistanceSquared(second));
+        }
+
+        private float getDistanceSquared(ChunkModel model) {
+            return model.getPosition().add(CHUNK_CENTER).distanceSquared(camera);
+        }
+    }
+
+    private static class ChunkMeshResult {
+        private final VertexData vertexData;
+        private final int byteCount;
+        private final long connectivity;
+
+        private ChunkMeshResult(VertexData vertexData, int byteCount, long connectivity) {
+            this.vertexData = vertexData;
+            this.byteCount = byteCount;
+            this.connectivity = connectivity;
         }
     }
 
     /**
      * In the case that meshing is occurring and that the chunk is not renderable, a previous model can be rendered instead. To use this feature, set the previous model using {@link
      * org.spoutcraft.client.nterface.mesh.ParallelChunkMesher.ChunkModel#setPrevious(org.spoutcraft.client.nterface.mesh.ParallelChunkMesher.ChunkModel)}. This previous model will be used until the
-     * mesh becomes available. At this point, the previous model will be destroyed, and the new one rendered. When a model isn't needed anymore, you must call {@link
+     * mesh is uploaded. At this point, the previous model will be destroyed, and the new one rendered. Only completed models are kept as previous ones, so at most one is kept alive. When a model isn't needed anymore, you must call {@link
      * org.spoutcraft.client.nterface.mesh.ParallelChunkMesher.ChunkModel#destroy()} to dispose of it completely. This will also cancel the meshing if it's in progress, and destroy the previous model.
-     * The chunk can also be automatically culled by passing an optional {@link org.spoutcraft.client.nterface.Interface} to the {@link org.spoutcraft.client.nterface.mesh.ParallelChunkMesher}
-     * constructor.
+     * Culling is done by setting the visibility of the model for each frame, see {@link #setVisible(boolean)}. The connectivity of the chunk, for occlusion culling, is available once meshed, see
+     * {@link #getConnectivity()}.
      */
     public class ChunkModel extends Model {
-        private Future<VertexData> mesh;
+        private Future<ChunkMeshResult> mesh;
         private boolean complete = false;
         private ChunkModel previous;
+        private boolean visible = false;
+        private long connectivity = ChunkConnectivity.ALL;
+        private final int detailLevel;
 
-        private ChunkModel(Future<VertexData> mesh) {
+        private ChunkModel(Future<ChunkMeshResult> mesh, int detailLevel) {
             this.mesh = mesh;
+            this.detailLevel = detailLevel;
         }
 
         @Override
         public void render() {
-            // If we have not received the mesh and it's done
-            if (!complete && mesh.isDone()) {
-                // Get the mesh
-                final VertexData vertexData;
-                try {
-                    vertexData = mesh.get();
-                } catch (Exception ex) {
-                    throw new RuntimeException(ex);
-                }
-                mesh = null;
-                // If the chunk mesher returned a mesh. It may not return one if the chunk has no mesh (completely invisible)
-                if (vertexData != null) {
-                    // Create the vertex array from the mesh
-                    final VertexArray vertexArray = nterface.getRenderer().getContext().newVertexArray();
-                    vertexArray.create();
-                    vertexArray.setData(vertexData);
-                    // Set it for rendering
-                    setVertexArray(vertexArray);
-                }
-                // Destroy and discard the previous model (if any), as it is now obsolete
-                if (previous != null) {
-                    previous.destroy();
-                    previous = null;
-                }
-                // Set the model as complete
-                complete = true;
-            }
+            // The mesh is uploaded by the mesher, within the budget for the frame
             // It's hard to look right
             // at the world baby
             // But here's my frustum
             // so cull me maybe?
-            if (!nterface.isChunkVisible(getPosition())) {
+            if (!visible) {
                 return;
             }
+            draw();
+        }
+
+        private void draw() {
             // If we have a vertex array, we can render
             if (complete) {
-                // Only render if the model has a vertex array and we're visible
+                // Only render if the model has a vertex array
                 if (getVertexArray() != null) {
                     super.render();
                 }
             } else if (previous != null) {
-                // Else, fall back on the previous model if we have one and we're visible
-                previous.render();
+                // Else, fall back on the previous model if we have one, which shares our visibility
+                previous.draw();
+            }
+        }
+
+        /**
+         * Sets whether or not the model is visible, and should be rendered. This should be updated each frame, from the culling.
+         *
+         * @param visible Whether or not the model is visible
+         */
+        public void setVisible(boolean visible) {
+            this.visible = visible;
+        }
+
+        /**
+         * Returns the level of detail the chunk is meshed at.
+         *
+         * @return The level of detail
+         */
+        public int getDetailLevel() {
+            return detailLevel;
+        }
+
+        /**
+         * Returns true if the model was set as visible for this frame.
+         *
+         * @return Whether or not the model is visible
+         */
+        public boolean isVisible() {
+            return visible;
+        }
+
+        /**
+         * Returns the connectivity of the faces of the chunk (see {@link org.spoutcraft.client.nterface.culling.ChunkConnectivity}). Until the mesh has been uploaded (see {@link
+         * org.spoutcraft.client.nterface.mesh.ParallelChunkMesher#upload(int, long)}), this is the connectivity of the previous model, or {@link org.spoutcraft.client.nterface.culling.ChunkConnectivity#ALL} if there's none.
+         *
+         * @return The connectivity of the chunk
+         */
+        public long getConnectivity() {
+            if (complete) {
+                return connectivity;
+            }
+            return previous != null ? previous.getConnectivity() : ChunkConnectivity.ALL;
+        }
+
+        private ChunkMeshResult getResult() {
+            try {
+                return mesh.get();
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        private void updateMesh() {
+            // If we have not received the mesh and it's done. A cancelled mesh was superseded, so we keep falling back on the previous model
+            if (!complete && mesh != null && mesh.isDone() && !mesh.isCancelled()) {
+                // Get the mesh
+                final ChunkMeshResult result = getResult();
+                mesh = null;
+                final VertexData vertexData = result.vertexData;
+                connectivity = result.connectivity;
+                // Destroy and discard the previous model (if any), as it is now obsolete. This is done first so its vertex array can be reused for the new mesh
+                if (previous != null) {
+                    previous.destroy();
+                    previous = null;
+                }
+                // If the chunk mesher returned a mesh. It may not return one if the chunk has no mesh (completely invisible)
+                if (vertexData != null) {
+                    // Borrow a vertex array, and replace its data with the mesh
+                    final VertexArray vertexArray = vertexArrays.borrow(result.byteCount);
+                    vertexArray.setData(vertexData);
+                    // Set it for rendering
+                    setVertexArray(vertexArray);
+                }
+                // Set the model as complete
+                complete = true;
             }
         }
 
         /**
-         * Sets the previous model to renderer until the updated one is ready.
+         * Sets the previous model to renderer until the updated one is ready. If the previous model isn't complete, it is destroyed and its own previous model is used instead, so that only the last
+         * completed model is kept. A previous model with a mesh waiting to be uploaded isn't complete, so the outdated mesh is never uploaded.
          *
          * @param previous The previous model
          */
         public void setPrevious(ChunkModel previous) {
+            if (previous != null) {
+                if (!previous.complete) {
+                    // The previous model is itself still waiting on a mesh, which has been superseded by ours, skip it
+                    final ChunkModel completed = previous.previous;
+                    previous.previous = null;
+                    previous.destroy();
+                    previous = completed;
+                }
+            }
             this.previous = previous;
         }
 
         /**
-         * Destroys the models, cancelling the meshing task if in progress, and the previous model (if any).
+         * Destroys the models, cancelling the meshing task if in progress, and the previous model (if any). The vertex array is returned to the pool, for reuse by other models.
          */
         public void destroy() {
-            // If we have a vertex array, destroy it
+            // If we have a vertex array, return it to the pool
             if (complete) {
                 if (getVertexArray() != null) {
-                    getVertexArray().destroy();
+                    vertexArrays.release(getVertexArray());
+                    setVertexArray(null);
                 }
                 complete = false;
             } else {
                 // Else, the mesh is still in progress, cancel that
-                mesh.cancel(false);
-                mesh = null;
+                if (mesh != null) {
+                    mesh.cancel(false);
+                    mesh = null;
+                }
                 // Also destroy and discard the previous model if we have one
                 if (previous != null) {
                     previous.destroy();
@@ -23,14 +23,9 @@
  */
 package org.spoutcraft.client.nterface.mesh;
 
-import gnu.trove.list.TFloatList;
-import gnu.trove.list.TIntList;
-
-import org.spoutcraft.client.nterface.mesh.Mesh.MeshAttribute;
 import org.spoutcraft.client.universe.block.BlockFace;
 import org.spoutcraft.client.universe.block.BlockFaces;
-import org.spoutcraft.client.universe.block.material.Material;
-import org.spoutcraft.client.universe.world.Chunk;
+import org.spoutcraft.client.universe.block.material.MaterialTable;
 
 /**
  * The standard chunk mesher. Voxels are meshed as blocks. Occludes any block not visible, including the edge blocks. Can mesh a chunk with 3n^2(n+2) block access operations, n being the size of the
@@ -38,109 +33,89 @@ import org.spoutcraft.client.universe.world.Chunk;
  */
 public class StandardChunkMesher implements ChunkMesher {
     @Override
-    public Mesh mesh(ChunkSnapshotGroup chunk) {
+    public void mesh(ChunkSnapshotGroup chunk, ChunkMeshBuffers buffers) {
         // TODO: add textures
-        final Mesh mesh = new Mesh(MeshAttribute.POSITIONS, MeshAttribute.NORMALS);
-        final TFloatList positions = mesh.getAttribute(MeshAttribute.POSITIONS);
-        final TIntList indices = mesh.getIndices();
+        final int[] materials = buffers.prepare(chunk);
+        if (materials == null) {
+            // Nothing can be visible in the chunk
+            return;
+        }
+        final MaterialTable table = buffers.getTable();
+        final PackedChunkMesh mesh = buffers.getMesh();
+        // Smaller for the lower levels of detail, for which the mesh takes care of the scaling
+        final int size = buffers.getSize();
         int index = 0;
         // Mesh the faces on the x axis
-        for (int zz = 0; zz < Chunk.BLOCKS.SIZE; zz++) {
-            for (int yy = 0; yy < Chunk.BLOCKS.SIZE; yy++) {
-                Material backMaterial = chunk.getMaterial(-1, yy, zz);
-                for (int xx = 0; xx < Chunk.BLOCKS.SIZE + 1; xx++) {
-                    final Material frontMaterial = chunk.getMaterial(xx, yy, zz);
-                    final BlockFace face = getFace(backMaterial, frontMaterial, BlockFaces.NS);
+        for (int zz = 0; zz < size; zz++) {
+            for (int yy = 0; yy < size; yy++) {
+                int backMaterial = materials[ChunkSnapshotGroup.getPaddedIndex(-1, yy, zz, size)];
+                for (int xx = 0; xx < size + 1; xx++) {
+                    final int frontMaterial = materials[ChunkSnapshotGroup.getPaddedIndex(xx, yy, zz, size)];
+                    final BlockFace face = table.getFace(backMaterial, frontMaterial, BlockFaces.NS);
                     if (face == BlockFace.NORTH) {
-                        add(indices, index + 3, index + 2, index + 1, index + 2, index, index + 1);
+                        mesh.addIndices(index + 3, index + 2, index + 1, index + 2, index, index + 1);
                     } else if (face == BlockFace.SOUTH) {
-                        add(indices, index + 3, index + 1, index + 2, index + 2, index + 1, index);
+                        mesh.addIndices(index + 3, index + 1, index + 2, index + 2, index + 1, index);
                     } else {
                         backMaterial = frontMaterial;
                         continue;
                     }
-                    add(positions, xx, yy + 1, zz + 1);
-                    add(positions, xx, yy + 1, zz);
-                    add(positions, xx, yy, zz + 1);
-                    add(positions, xx, yy, zz);
+                    mesh.addVertex(xx, yy + 1, zz + 1, face);
+                    mesh.addVertex(xx, yy + 1, zz, face);
+                    mesh.addVertex(xx, yy, zz + 1, face);
+                    mesh.addVertex(xx, yy, zz, face);
                     index += 4;
                     backMaterial = frontMaterial;
                 }
             }
         }
         // Mesh the faces on the y axis
-        for (int xx = 0; xx < Chunk.BLOCKS.SIZE; xx++) {
-            for (int zz = 0; zz < Chunk.BLOCKS.SIZE; zz++) {
-                Material backMaterial = chunk.getMaterial(xx, -1, zz);
-                for (int yy = 0; yy < Chunk.BLOCKS.SIZE + 1; yy++) {
-                    final Material frontMaterial = chunk.getMaterial(xx, yy, zz);
-                    final BlockFace face = getFace(backMaterial, frontMaterial, BlockFaces.BT);
+        for (int xx = 0; xx < size; xx++) {
+            for (int zz = 0; zz < size; zz++) {
+                int backMaterial = materials[ChunkSnapshotGroup.getPaddedIndex(xx, -1, zz, size)];
+                for (int yy = 0; yy < size + 1; yy++) {
+                    final int frontMaterial = materials[ChunkSnapshotGroup.getPaddedIndex(xx, yy, zz, size)];
+                    final BlockFace face = table.getFace(backMaterial, frontMaterial, BlockFaces.BT);
                     if (face == BlockFace.BOTTOM) {
-                        add(indices, index + 3, index + 2, index + 1, index + 2, index, index + 1);
+                        mesh.addIndices(index + 3, index + 2, index + 1, index + 2, index, index + 1);
                     } else if (face == BlockFace.TOP) {
-                        add(indices, index + 3, index + 1, index + 2, index + 2, index + 1, index);
+                        mesh.addIndices(index + 3, index + 1, index + 2, index + 2, index + 1, index);
                     } else {
                         backMaterial = frontMaterial;
                         continue;
                     }
-                    add(positions, xx, yy, zz);
-                    add(positions, xx + 1, yy, zz);
-                    add(positions, xx, yy, zz + 1);
-                    add(positions, xx + 1, yy, zz + 1);
+                    mesh.addVertex(xx, yy, zz, face);
+                    mesh.addVertex(xx + 1, yy, zz, face);
+                    mesh.addVertex(xx, yy, zz + 1, face);
+                    mesh.addVertex(xx + 1, yy, zz + 1, face);
                     index += 4;
                     backMaterial = frontMaterial;
                 }
             }
         }
         // Mesh the faces on the z axis
-        for (int xx = 0; xx < Chunk.BLOCKS.SIZE; xx++) {
-            for (int yy = 0; yy < Chunk.BLOCKS.SIZE; yy++) {
-                Material backMaterial = chunk.getMaterial(xx, yy, -1);
-                for (int zz = 0; zz < Chunk.BLOCKS.SIZE + 1; zz++) {
-                    final Material frontMaterial = chunk.getMaterial(xx, yy, zz);
-                    final BlockFace face = getFace(backMaterial, frontMaterial, BlockFaces.EW);
+        for (int xx = 0; xx < size; xx++) {
+            for (int yy = 0; yy < size; yy++) {
+                int backMaterial = materials[ChunkSnapshotGroup.getPaddedIndex(xx, yy, -1, size)];
+                for (int zz = 0; zz < size + 1; zz++) {
+                    final int frontMaterial = materials[ChunkSnapshotGroup.getPaddedIndex(xx, yy, zz, size)];
+                    final BlockFace face = table.getFace(backMaterial, frontMaterial, BlockFaces.EW);
                     if (face == BlockFace.EAST) {
-                        add(indices, index + 3, index + 2, index + 1, index + 2, index, index + 1);
+                        mesh.addIndices(index + 3, index + 2, index + 1, index + 2, index, index + 1);
                     } else if (face == BlockFace.WEST) {
-                        add(indices, index + 3, index + 1, index + 2, index + 2, index + 1, index);
+                        mesh.addIndices(index + 3, index + 1, index + 2, index + 2, index + 1, index);
                     } else {
                         backMaterial = frontMaterial;
                         continue;
                     }
-                    add(positions, xx, yy + 1, zz);
-                    add(positions, xx + 1, yy + 1, zz);
-                    add(positions, xx, yy, zz);
-                    add(positions, xx + 1, yy, zz);
+                    mesh.addVertex(xx, yy + 1, zz, face);
+                    mesh.addVertex(xx + 1, yy + 1, zz, face);
+                    mesh.addVertex(xx, yy, zz, face);
+                    mesh.addVertex(xx + 1, yy, zz, face);
                     index += 4;
                     backMaterial = frontMaterial;
                 }
             }
         }
-        return mesh;
-    }
-
-    private BlockFace getFace(Material back, Material front, BlockFaces axis) {
-        if (back.isVisible() && !front.occludes(back, axis.get(0))) {
-            return axis.get(1);
-        }
-        if (front.isVisible() && !back.occludes(front, axis.get(1))) {
-            return axis.get(0);
-        }
-        return null;
-    }
-
-    private static void add(TFloatList list, float x, float y, float z) {
-        list.add(x);
-        list.add(y);
-        list.add(z);
-    }
-
-    private static void add(TIntList list, int i0, int i1, int i2, int i3, int i4, int i5) {
-        list.add(i0);
-        list.add(i1);
-        list.add(i2);
-        list.add(i3);
-        list.add(i4);
-        list.add(i5);
     }
 }
@@ -0,0 +1,181 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.render;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A pool of reusable resources holding data of varying size, such as GPU vertex arrays, to avoid creating and destroying them each time. Borrowing reuses the last released resource, whatever it held
+ * before, since the data is replaced anyway. Released resources still retain the storage for their data until reused, so the pool is capped by the total number of bytes they retain: a resource that
+ * doesn't fit is freed when released. Resources are created and freed through the {@link org.spoutcraft.client.nterface.render.BoundedResourcePool.Allocator}, which usually wraps the rendering context. This
+ * isn't thread safe, and should be used from the thread owning the context.
+ *
+ * @param <T> The type of the resources
+ */
+public class BoundedResourcePool<T> {
+    private final Allocator<T> allocator;
+    private final long maxPooledBytes;
+    private final Deque<T> pooled = new ArrayDeque<>();
+    // The number of bytes retained by each pooled and borrowed resource
+    private final Map<T, Integer> pooledSizes = new IdentityHashMap<>();
+    private final Map<T, Integer> borrowed = new IdentityHashMap<>();
+    private long pooledBytes = 0;
+    private long allocatedCount = 0;
+    private long reusedCount = 0;
+
+    /**
+     * Constructs a new pool from the allocator for the resources.
+     *
+     * @param allocator The allocator
+     * @param maxPooledBytes The maximum total number of bytes retained by the resources kept for reuse
+     */
+    public BoundedResourcePool(Allocator<T> allocator, long maxPooledBytes) {
+        this.allocator = allocator;
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * Borrows a resource to store the given number of bytes, reusing the last released one if possible, else allocating a new one. It must be released when not needed anymore.
+     *
+     * @param byteCount The number of bytes the resource will retain
+     * @return The resource
+     */
+    public T borrow(int byteCount) {
+        T resource = pooled.pollLast();
+        if (resource != null) {
+            pooledBytes -= pooledSizes.remove(resource);
+            reusedCount++;
+        } else {
+            resource = allocator.allocate();
+            allocatedCount++;
+        }
+        borrowed.put(resource, byteCount);
+        return resource;
+    }
+
+    /**
+     * Returns a borrowed resource to the pool, for reuse. If the bytes it retains don't fit in the pool, it's freed instead.
+     *
+     * @param resource The resource
+     * @throws IllegalArgumentException If the resource wasn't borrowed from this pool
+     */
+    public void release(T resource) {
+        final Integer byteCount = borrowed.remove(resource);
+        if (byteCount == null) {
+            throw new IllegalArgumentException("Resource wasn't borrowed from this pool: " + resource);
+        }
+        if (pooledBytes + byteCount <= maxPooledBytes) {
+            pooled.addLast(resource);
+            pooledSizes.put(resource, byteCount);
+            pooledBytes += byteCount;
+        } else {
+            allocator.free(resource);
+        }
+    }
+
+    /**
+     * Frees all the resources, pooled and borrowed. This is used when the resources won't be needed anymore, like when the context is destroyed. Borrowed resources can't be released afterwards.
+     */
+    public void clear() {
+        for (T resource : pooled) {
+            allocator.free(resource);
+        }
+        pooled.clear();
+        pooledSizes.clear();
+        pooledBytes = 0;
+        for (T resource : borrowed.keySet()) {
+            allocator.free(resource);
+        }
+        borrowed.clear();
+    }
+
+    /**
+     * Returns the number of resources waiting in the pool to be reused.
+     *
+     * @return The number of pooled resources
+     */
+    public int getPooledCount() {
+        return pooled.size();
+    }
+
+    /**
+     * Returns the total number of bytes retained by the resources waiting in the pool.
+     *
+     * @return The number of pooled bytes
+     */
+    public long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    /**
+     * Returns the number of resources currently borrowed.
+     *
+     * @return The number of borrowed resources
+     */
+    public int getBorrowedCount() {
+        return borrowed.size();
+    }
+
+    /**
+     * Returns the number of resources allocated since the pool was created.
+     *
+     * @return The number of allocations
+     */
+    public long getAllocatedCount() {
+        return allocatedCount;
+    }
+
+    /**
+     * Returns the number of times a pooled resource was reused instead of allocating a new one.
+     *
+     * @return The number of reuses
+     */
+    public long getReusedCount() {
+        return reusedCount;
+    }
+
+    /**
+     * Creates and frees the resources of a pool.
+     *
+     * @param <T> The type of the resources
+     */
+    public interface Allocator<T> {
+        /**
+         * Creates a new resource, ready to be used.
+         *
+         * @return The resource
+         */
+        T allocate();
+
+        /**
+         * Frees the resource, which won't be used anymore.
+         *
+         * @param resource The resource
+         */
+        void free(T resource);
+    }
+}
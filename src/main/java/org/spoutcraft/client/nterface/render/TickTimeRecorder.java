@@ -0,0 +1,83 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.render;
+
+import java.util.Arrays;
+
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+
+/**
+ * Records tick times and computes their percentiles, to measure the smoothness of the interface rather than just the average frame rate. A tick covers all the work of the interface thread for a
+ * frame, including the mesh uploads and the rendering, not the rendering alone. Samples are kept until reset, so this is meant to be reported and reset periodically. This isn't thread safe.
+ */
+public class TickTimeRecorder {
+    private final TLongList times = new TLongArrayList();
+    private long[] sorted = null;
+
+    /**
+     * Records the time of a tick.
+     *
+     * @param time The tick time, in nanoseconds
+     */
+    public void record(long time) {
+        times.add(time);
+        sorted = null;
+    }
+
+    /**
+     * Returns the number of tick times recorded since the last reset.
+     *
+     * @return The number of recorded ticks
+     */
+    public int getCount() {
+        return times.size();
+    }
+
+    /**
+     * Returns the tick time at the percentile, using the nearest rank. The 100th percentile is the longest tick time. Returns 0 if no tick time has been recorded.
+     *
+     * @param percentile The percentile, from 0 to 100
+     * @return The tick time at the percentile, in nanoseconds
+     */
+    public long getPercentile(double percentile) {
+        if (times.isEmpty()) {
+            return 0;
+        }
+        if (sorted == null) {
+            sorted = times.toArray();
+            Arrays.sort(sorted);
+        }
+        final int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    /**
+     * Clears the recorded tick times.
+     */
+    public void reset() {
+        times.clear();
+        sorted = null;
+    }
+}
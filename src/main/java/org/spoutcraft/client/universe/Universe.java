@@ -23,16 +23,13 @@
  */
 package org.spoutcraft.client.universe;
 
-import java.io.IOException;
-import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
 
 import com.flowpowered.commons.ticking.TickingElement;
 import com.flowpowered.math.GenericMath;
@@ -58,6 +55,8 @@ import org.spoutcraft.client.network.message.play.PositionLookMessage;
 import org.spoutcraft.client.network.message.play.RespawnMessage;
 import org.spoutcraft.client.network.message.play.SpawnPositionMessage;
 import org.spoutcraft.client.universe.block.material.Materials;
+import org.spoutcraft.client.universe.decode.DecodedColumn;
+import org.spoutcraft.client.universe.decode.ParallelChunkDecoder;
 import org.spoutcraft.client.universe.snapshot.WorldSnapshot;
 import org.spoutcraft.client.universe.world.Chunk;
 import org.spoutcraft.client.universe.world.World;
@@ -67,21 +66,20 @@ import org.spoutcraft.client.universe.world.World;
  */
 public class Universe extends TickingElement {
     private static final int TPS = 20;
-    // Chunk data handling
-    private static final int MAX_CHUNK_COLUMN_SECTIONS = 16;
-    private static final byte[] UNLOAD_CHUNKS_IN_COLUMN = {0x78, (byte) 0x9C, 0x63, 0x64, 0x1C, (byte) 0xD9, 0x00, 0x00, (byte) 0x81, (byte) 0x80, 0x01, 0x01};
-    private static final Inflater INFLATER = new Inflater();
+    private static final int DEFAULT_DECODING_THREADS = 2;
     private final Game game;
     private final Map<UUID, World> worlds = new ConcurrentHashMap<>();
     private final Map<UUID, WorldSnapshot> worldSnapshots = new ConcurrentHashMap<>();
     private final Map<String, UUID> worldIDsByName = new ConcurrentHashMap<>();
     private final AtomicReference<World> activeWorld = new AtomicReference<>(null);
     private final AnnotatedMessageHandler messageHandler;
+    private final ParallelChunkDecoder decoder;
 
     public Universe(Game game) {
         super("universe", TPS);
         this.game = game;
         messageHandler = new AnnotatedMessageHandler(this);
+        decoder = new ParallelChunkDecoder(Math.max(1, game.getConfiguration().getInt("universe.chunk_decoding.threads", DEFAULT_DECODING_THREADS)));
     }
 
     @Override
@@ -128,6 +126,7 @@ public class Universe extends TickingElement {
             messages.remove();
         }
 
+        installDecodedColumns();
         updateWorldTimes(dt);
         updateSnapshots();
     }
@@ -136,6 +135,7 @@ public class Universe extends TickingElement {
     public void onStop() {
         game.getLogger().info("Stopping universe");
 
+        decoder.shutdown();
         worlds.clear();
         updateSnapshots();
     }
@@ -168,6 +168,32 @@ public class Universe extends TickingElement {
         }
     }
 
+    private void installDecodedColumns() {
+        // Only install the columns that are ready, the others will be installed during the next ticks
+        while (true) {
+            final DecodedColumn column;
+            try {
+                column = decoder.poll();
+            } catch (ExecutionException ex) {
+                game.getLogger().error("Failed to decode chunk data", ex.getCause());
+                continue;
+            }
+            if (column == null) {
+                return;
+            }
+            final World world = column.getWorld();
+            if (column.isUnload()) {
+                world.removeChunkColumn(column.getX(), column.getZ());
+            } else if (column.isGroundUpContinuous()) {
+                world.setChunkColumn(column.getX(), column.getZ(), column.getChunks());
+            } else {
+                for (Chunk chunk : column.getChunks()) {
+                    world.setChunk(chunk);
+                }
+            }
+        }
+    }
+
     private void updateWorldTimes(long dt) {
         for (World world : worlds.values()) {
             world.updateTime(dt);
@@ -250,264 +276,22 @@ public class Universe extends TickingElement {
     }
 
     /**
-     * Handles a {@link org.spoutcraft.client.network.message.play.ChunkDataMessage}.
+     * Handles a {@link org.spoutcraft.client.network.message.play.ChunkDataMessage}. The message is queued for decoding, the chunks being installed by a later tick.
      *
      * @param message See {@link org.spoutcraft.client.network.message.play.ChunkDataMessage}
      */
     @Handle
     private void handleChunkData(ChunkDataMessage message) {
-        // Check if we should remove a column of chunks
-        if (Arrays.equals(UNLOAD_CHUNKS_IN_COLUMN, message.getCompressedData())) {
-            activeWorld.get().removeChunkColumn(message.getColumnX(), message.getColumnZ(), 0, MAX_CHUNK_COLUMN_SECTIONS);
-        } else {
-            final byte[][][] data = new byte[MAX_CHUNK_COLUMN_SECTIONS][][];
-            try {
-
-                // Find out how many non-air chunks we have in the column and add on a data segment for it
-                int nonEmptyColumns = 0;
-                for (int i = 0; i < MAX_CHUNK_COLUMN_SECTIONS; i++) {
-                    if ((message.getPrimaryBitMap() >> i & 1) != 0) {
-                        data[i] = new byte[5][];
-                        nonEmptyColumns++;
-                    }
-                }
-                // Length = nonEmptyColumns * (Blocks + (Metadata + Additional Data + Light + Skylight))
-                int actualCompressedDataLength = nonEmptyColumns * (Chunk.BLOCKS.VOLUME + (Chunk.BLOCKS.HALF_VOLUME * 4));
-
-                // If ground up continuous, biome data is sent per column. We need to add on to the data size for this.
-                if (message.isGroundUpContinuous()) {
-                    actualCompressedDataLength += Chunk.BLOCKS.AREA;
-                }
-
-                decompressChunkData(data, message.isGroundUpContinuous(), true, actualCompressedDataLength, message.getCompressedData());
-            } catch (IOException e) {
-                System.out.println(e);
-            }
-            populateChunks(message.getColumnX(), message.getColumnZ(), data);
-        }
+        decoder.queue(activeWorld.get(), message);
     }
 
     /**
-     * Handles a {@link org.spoutcraft.client.network.message.play.ChunkDataBulkMessage}.
+     * Handles a {@link org.spoutcraft.client.network.message.play.ChunkDataBulkMessage}. The message is queued for decoding, the chunks being installed by a later tick.
      *
      * @param message See {@link org.spoutcraft.client.network.message.play.ChunkDataBulkMessage}
      */
     @Handle
     private void handleChunkDataBulk(ChunkDataBulkMessage message) {
-        int position = 0;
-
-        for (int i = 0; i < message.getColumnCount(); i++) {
-            byte[][][] data = new byte[MAX_CHUNK_COLUMN_SECTIONS][][];
-
-            // Find out how many non-air chunks we have in the column and add on a data segment for it
-            int nonEmptyPrimaryColumns = 0;
-            int nonEmptyAdditionalColumns = 0;
-            for (int j = 0; i < MAX_CHUNK_COLUMN_SECTIONS; j++) {
-                if ((message.getPrimaryBitMaps()[i] >> j & 1) != 0) {
-                    nonEmptyAdditionalColumns++;
-                    data[j] = new byte[5][];
-                }
-                nonEmptyAdditionalColumns += message.getAdditionalDataBitMaps()[i] >> j & 1;
-            }
-
-            // Length = nonEmptyPrimaryColumns * (Blocks + (Metadata + Light + (optionally) SkyLight)) + Biome + (nonEmptyAdditionalDataColumns)
-            int actualCompressedDataLength = nonEmptyPrimaryColumns * (Chunk.BLOCKS.VOLUME + (Chunk.BLOCKS.HALF_VOLUME * (message.hasSkyLight() ? 3 : 2))) + Chunk.BLOCKS.AREA + (nonEmptyAdditionalColumns * Chunk.BLOCKS.HALF_VOLUME);
-
-            try {
-                decompressChunkData(data, true, message.hasSkyLight(), position, actualCompressedDataLength, message.getCompressedData());
-                position += actualCompressedDataLength;
-            } catch (IOException e) {
-                System.out.println(e);
-            }
-            populateChunks(message.getColumnXs()[i], message.getColumnZs()[i], data);
-        }
-    }
-
-    private void decompressChunkData(byte[][][] toFill, boolean groundUpContinuous, boolean hasSkyLight, int length, byte[] compressedData) throws IOException {
-        decompressChunkData(toFill, groundUpContinuous, hasSkyLight, 0, length, compressedData);
-    }
-
-    /**
-     * Decompresses the raw compressed data from the server into the provided 3D array that comprises:
-     * <p/>
-     * Section        - The section of the column, ground up ChunkDataIndex - See {@link org.spoutcraft.client.universe.Universe.ChunkDataIndex} data           - decompressed data as a byte
-     *
-     * @param groundUpContinuous True if this is the entire column, false if not. Used to determine if biome data is included
-     * @param compressedData Compressed data from the server
-     * @param hasSkyLight True if the compressed data has sky light, only {@link org.spoutcraft.client.network.message.play.ChunkDataBulkMessage}s can not provide this
-     * @throws IOException If the chunk's data is corrupted during inflate or if all bytes are not decompressed
-     */
-    private void decompressChunkData(byte[][][] toFill, boolean groundUpContinuous, boolean hasSkyLight, int offset, int length, byte[] compressedData) throws IOException {
-        // Step 1 - Decompress the data
-        final byte[] decompressedData = new byte[length];
-        INFLATER.setInput(compressedData, offset, length);
-
-        try {
-            INFLATER.inflate(decompressedData);
-        } catch (DataFormatException e) {
-            throw new IOException("Chunk data is corrupted!", e);
-        } finally {
-            INFLATER.end();
-        }
-
-        // Step 2 - Build data array
-        for (final byte[][] section : toFill) {
-            if (section == null) {
-                continue;
-            }
-
-            int index = 0;
-
-            // Step 2a. - Fill Block ids
-            section[ChunkDataIndex.BLOCK_ID.value()] = new byte[Chunk.BLOCKS.VOLUME];
-            System.arraycopy(decompressedData, 0, section[ChunkDataIndex.BLOCK_ID.value()], 0, Chunk.BLOCKS.VOLUME);
-
-            index += Chunk.BLOCKS.VOLUME;
-
-            // Step 2b. - Fill Block metadata
-            section[ChunkDataIndex.BLOCK_METADATA.value()] = new byte[Chunk.BLOCKS.VOLUME];
-            fillHalfByteDataArray(section, ChunkDataIndex.BLOCK_METADATA, decompressedData, index, Chunk.BLOCKS.HALF_VOLUME);
-
-            index += Chunk.BLOCKS.HALF_VOLUME;
-
-            // Step 2c. - Fill Block light
-            section[ChunkDataIndex.BLOCK_LIGHT.value()] = new byte[Chunk.BLOCKS.VOLUME];
-            fillHalfByteDataArray(section, ChunkDataIndex.BLOCK_LIGHT, decompressedData, index, Chunk.BLOCKS.HALF_VOLUME);
-
-            index += Chunk.BLOCKS.HALF_VOLUME;
-
-            // Step 2d. - Fill Block additional data
-            //TODO Official Minecraft doesn't use this as it simply lets mods go past 256 block ids, should we support it?
-            section[ChunkDataIndex.BLOCK_ADDITIONAL_DATA.value()] = new byte[Chunk.BLOCKS.VOLUME];
-            Arrays.fill(section[ChunkDataIndex.BLOCK_ADDITIONAL_DATA.value()], (byte) 0);
-
-            index += Chunk.BLOCKS.HALF_VOLUME;
-
-            // Step 2e. - Fill Block sky light
-            section[ChunkDataIndex.BLOCK_SKY_LIGHT.value()] = new byte[Chunk.BLOCKS.VOLUME];
-
-            if (hasSkyLight) {
-                fillHalfByteDataArray(section, ChunkDataIndex.BLOCK_SKY_LIGHT, decompressedData, index, Chunk.BLOCKS.HALF_VOLUME);
-            } else {
-                Arrays.fill(section[ChunkDataIndex.BLOCK_SKY_LIGHT.value()], (byte) 0);
-            }
-
-            if (groundUpContinuous) {
-                index += Chunk.BLOCKS.HALF_VOLUME;
-                //TODO Handle Biomes later as they are unique
-            }
-        }
-    }
-
-    /**
-     * Takes a byte array and splits each byte into two values.
-     * <p/>
-     * This is used in ChunkData to pull out the data provided for metadata, light, additional data, and skylight.
-     *
-     * @param sectionData The byte 2D array of the section of the column
-     * @param index See {@link org.spoutcraft.client.universe.Universe.ChunkDataIndex}
-     * @param decompressedData The byte array of decompressed data
-     * @param startIndex Where to start reading data in the decompressed data array
-     * @param length How much to read
-     */
-    private void fillHalfByteDataArray(byte[][] sectionData, ChunkDataIndex index, byte[] decompressedData, int startIndex, int length) {
-        int position = 0;
-        for (int i = startIndex; i < startIndex + length; i++) {
-            final byte left = (byte) ((decompressedData[i] >> 4) & 0xF);
-            final byte right = (byte) (decompressedData[i] & 0xF);
-
-            sectionData[index.value()][position++] = left;
-            sectionData[index.value()][position++] = right;
-        }
-    }
-
-    /**
-     * Populates all non-air {@link Chunk}s in the column.
-     * <p/>
-     * Any chunks that exist in the {@link org.spoutcraft.client.universe.world.World} will be replaced.
-     *
-     * @param columnX The column's x coordinate
-     * @param columnZ The column's z coordinate
-     * @param data The byte 3D array containing section, {@link org.spoutcraft.client.universe.Universe.ChunkDataIndex}, and byte (data)
-     */
-    private void populateChunks(int columnX, int columnZ, byte[][][] data) {
-        final int baseX = columnX >> Chunk.BLOCKS.BITS;
-        final int baseZ = columnZ >> Chunk.BLOCKS.BITS;
-
-        for (int i = 0; i < MAX_CHUNK_COLUMN_SECTIONS; i++) {
-            if (data[i] == null) {
-                continue;
-            }
-            int baseY = i << Chunk.BLOCKS.BITS;
-            for (int xx = 0; xx < Chunk.BLOCKS.SIZE; xx++) {
-                for (int yy = 0; yy < Chunk.BLOCKS.SIZE; yy++) {
-                    for (int zz = 0; zz < Chunk.BLOCKS.SIZE; zz++) {
-                        int x = xx + baseX;
-                        int y = yy + baseY;
-                        int z = zz + baseZ;
-
-                        //TODO Test Code, restore the commented out code once we have all materials in place!
-                        //final short[] blockIds = toShort(data[i][ChunkDataIndex.BLOCK_ID.value()]);
-                        final byte[] rawIds = data[i][ChunkDataIndex.BLOCK_ID.value()];
-                        final short[] blockIds = new short[rawIds.length];
-                        for (int idIndex = 0; idIndex < rawIds.length; idIndex++) {
-                            if (rawIds[idIndex] != (byte) 0) {
-                                blockIds[idIndex] = Materials.SOLID.getID();
-                            } else {
-                                blockIds[idIndex] = Materials.AIR.getID();
-                            }
-                        }
-                        final short[] blockData = new short[Chunk.BLOCKS.VOLUME];
-                        for (int d = 0; i < blockData.length; i++) {
-                            // final block data order: 00MM-BB-SS (M = metadata, B = block light, S = sky light)
-                            blockData[i] = (short) (((data[i][ChunkDataIndex.BLOCK_METADATA.value()][d] & 0xF) << 8)
-                                    | ((data[i][ChunkDataIndex.BLOCK_LIGHT.value()][d] & 0xF) << 4)
-                                    | ((data[i][ChunkDataIndex.BLOCK_SKY_LIGHT.value()][d] & 0xF)));
-                        }
-                        activeWorld.get().setChunk(new Chunk(activeWorld.get(), new Vector3i(x, y, z), blockIds, blockData));
-                    }
-                }
-            }
-        }
-    }
-
-    private static short[] toShort(byte[] a) {
-        final short[] b = new short[a.length];
-        for (int i = 0; i < a.length; i++) {
-            b[i] = a[i];
-        }
-        return b;
-    }
-
-    private static enum ChunkDataIndex {
-        /**
-         * First index is {@link org.spoutcraft.client.universe.block.material.Material} type, whole byte
-         */
-        BLOCK_ID(0),
-        /**
-         * Second index is {@link org.spoutcraft.client.universe.block.Block} metadata, half byte
-         */
-        BLOCK_METADATA(1),
-        /**
-         * Third index is {@link org.spoutcraft.client.universe.block.Block} light values, half byte
-         */
-        BLOCK_LIGHT(2),
-        /**
-         * Fourth index is {@link org.spoutcraft.client.universe.block.Block} additional data, half byte and should always be 0
-         */
-        BLOCK_ADDITIONAL_DATA(3),
-        /**
-         * Fifth index is {@link org.spoutcraft.client.universe.block.Block} sky light, half byte
-         */
-        BLOCK_SKY_LIGHT(4);
-        private final int value;
-
-        ChunkDataIndex(int value) {
-            this.value = value;
-        }
-
-        public int value() {
-            return value;
-        }
+        decoder.queue(activeWorld.get(), message);
     }
 }
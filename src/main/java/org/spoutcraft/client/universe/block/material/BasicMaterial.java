@@ -41,6 +41,11 @@ public class BasicMaterial extends MasterMaterial {
         return visible;
     }
 
+    @Override
+    public boolean isOpaque() {
+        return visible;
+    }
+
     @Override
     public boolean occludes(Material material, BlockFace direction) {
         return visible;
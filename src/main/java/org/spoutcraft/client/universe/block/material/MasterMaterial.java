@@ -43,6 +43,7 @@ public abstract class MasterMaterial extends Material {
 
     protected void addSubMaterial(SubMaterial subMaterial) {
         final SubMaterial previous = subMaterials.put(subMaterial.getSubID(), subMaterial);
+        invalidateTable();
         if (previous != null) {
             System.out.println("New sub-material has conflicting ID, previous sub-material was overwritten: " + previous + " => " + subMaterial);
         }
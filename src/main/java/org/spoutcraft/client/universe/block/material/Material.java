@@ -33,6 +33,7 @@ import org.spoutcraft.client.universe.block.BlockFace;
  */
 public abstract class Material {
     private static final TShortObjectMap<MasterMaterial> MATERIALS_BY_ID = new TShortObjectHashMap<>();
+    private static volatile MaterialTable table = null;
     private final short id;
     private final short subID;
 
@@ -51,32 +52,66 @@ public abstract class Material {
 
     public abstract boolean isVisible();
 
+    /**
+     * Returns true if the material completely hides the neighbouring materials, on all faces.
+     *
+     * @return Whether or not the material is opaque
+     */
+    public abstract boolean isOpaque();
+
+    /**
+     * Returns true if this material hides the face of the other material in the direction, when they're next to each other. The result is cached for every pair of materials and face in the {@link
+     * org.spoutcraft.client.universe.block.material.MaterialTable}, so it must only depend on the arguments.
+     *
+     * @param material The neighbouring material
+     * @param direction The direction of the face
+     * @return Whether or not the face is hidden
+     */
     public abstract boolean occludes(Material material, BlockFace direction);
 
     protected static void register(MasterMaterial material) {
-        final MasterMaterial previous = MATERIALS_BY_ID.put(material.getID(), material);
+        final MasterMaterial previous;
+        synchronized (MATERIALS_BY_ID) {
+            previous = MATERIALS_BY_ID.put(material.getID(), material);
+            table = null;
+        }
         if (previous != null) {
             System.out.println("New material has conflicting ID, previous material was overwritten: " + previous + " => " + material);
         }
     }
 
+    static void invalidateTable() {
+        synchronized (MATERIALS_BY_ID) {
+            table = null;
+        }
+    }
+
+    /**
+     * Returns the lookup table for the currently registered materials. The table is built on the first call after the materials change, since registration happens during the construction of the
+     * materials, before they're fully initialized.
+     *
+     * @return The material lookup table
+     */
+    public static MaterialTable getTable() {
+        MaterialTable table = Material.table;
+        if (table == null) {
+            synchronized (MATERIALS_BY_ID) {
+                table = Material.table;
+                if (table == null) {
+                    table = new MaterialTable(MATERIALS_BY_ID);
+                    Material.table = table;
+                }
+            }
+        }
+        return table;
+    }
+
     public static Material get(short id) {
         return get(id, (short) 0);
     }
 
     public static Material get(short id, short subID) {
-        final MasterMaterial master = MATERIALS_BY_ID.get(id);
-        if (master == null) {
-            return Materials.AIR;
-        }
-        if (subID == 0) {
-            return master;
-        }
-        final SubMaterial sub = master.getSubMaterial(subID);
-        if (sub == null) {
-            return master;
-        }
-        return sub;
+        return getTable().get(id, subID);
     }
 
     @Override
@@ -0,0 +1,237 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.block.material;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import gnu.trove.map.TShortObjectMap;
+
+import org.spoutcraft.client.universe.block.BlockFace;
+import org.spoutcraft.client.universe.block.BlockFaces;
+
+/**
+ * A dense lookup table of the registered materials, indexed by ID and sub-ID, with bit sets of the material flags. Unlike the registry maps, resolving a material or its flags is a single array
+ * access, which is what the block loops need. The table is immutable, a new one is built after the materials change, see {@link Material#getTable()}. Unknown IDs resolve to {@link
+ * Materials#AIR}, and unknown sub-IDs to the master material, like {@link Material#get(short, short)}.
+ * <p/>
+ * Each distinct material also gets a dense index, valid for this table only. The occlusion between every pair of materials, for every face, is precomputed from {@link
+ * Material#occludes(Material, BlockFace)}, so that meshers can test it with a single bit test on the indices.
+ */
+public class MaterialTable {
+    /**
+     * The number of sub-IDs per ID in the table, which covers all the values of {@link org.spoutcraft.client.universe.world.Chunk#SUB_ID_MASK}.
+     */
+    public static final int SUB_ID_COUNT = 256;
+    private static final int SUB_ID_BITS = 8;
+    private static final BlockFace[] FACES = {BlockFace.TOP, BlockFace.BOTTOM, BlockFace.NORTH, BlockFace.SOUTH, BlockFace.EAST, BlockFace.WEST};
+    private final int[] indices;
+    private final Material[] materials;
+    private final long[] visible;
+    private final long[] opaque;
+    // One byte per ordered pair of materials, with a bit set for each face ordinal which is occluded
+    private final byte[] occlusion;
+    private final int airIndex;
+
+    MaterialTable(TShortObjectMap<MasterMaterial> masters) {
+        // Reading this first ensures the default materials are registered before looking at the others
+        final Material air = Materials.AIR;
+        int maxID = 0;
+        for (short id : masters.keys()) {
+            maxID = Math.max(maxID, id);
+        }
+        // Index the distinct materials, and map the IDs to the indices
+        final Map<Material, Integer> materialIndices = new IdentityHashMap<>();
+        final List<Material> materials = new ArrayList<>();
+        indices = new int[maxID + 1 << SUB_ID_BITS];
+        for (int id = 0; id <= maxID; id++) {
+            final MasterMaterial master = masters.get((short) id);
+            for (int subID = 0; subID < SUB_ID_COUNT; subID++) {
+                final Material material;
+                if (master == null) {
+                    material = air;
+                } else if (subID == 0) {
+                    material = master;
+                } else {
+                    final SubMaterial sub = master.getSubMaterial((short) subID);
+                    material = sub != null ? sub : master;
+                }
+                Integer index = materialIndices.get(material);
+                if (index == null) {
+                    index = materials.size();
+                    materialIndices.put(material, index);
+                    materials.add(material);
+                }
+                indices[id << SUB_ID_BITS | subID] = index;
+            }
+        }
+        if (!materialIndices.containsKey(air)) {
+            materialIndices.put(air, materials.size());
+            materials.add(air);
+        }
+        airIndex = materialIndices.get(air);
+        // Compute the flags and occlusion of the materials
+        final int count = materials.size();
+        this.materials = materials.toArray(new Material[count]);
+        visible = new long[(count + 63) >> 6];
+        opaque = new long[(count + 63) >> 6];
+        occlusion = new byte[count * count];
+        for (int i = 0; i < count; i++) {
+            final Material material = this.materials[i];
+            if (material.isVisible()) {
+                visible[i >> 6] |= 1L << i;
+            }
+            if (material.isOpaque()) {
+                opaque[i >> 6] |= 1L << i;
+            }
+            for (int j = 0; j < count; j++) {
+                int faces = 0;
+                for (BlockFace face : FACES) {
+                    if (material.occludes(this.materials[j], face)) {
+                        faces |= 1 << face.ordinal();
+                    }
+                }
+                occlusion[i * count + j] = (byte) faces;
+            }
+        }
+    }
+
+    /**
+     * Returns the material for the ID and sub-ID.
+     *
+     * @param id The material ID
+     * @param subID The material sub-ID
+     * @return The material
+     */
+    public Material get(short id, short subID) {
+        return materials[getIndex(id, subID)];
+    }
+
+    /**
+     * Returns the index in this table of the material for the ID and sub-ID.
+     *
+     * @param id The material ID
+     * @param subID The material sub-ID
+     * @return The material index
+     */
+    public int getIndex(short id, short subID) {
+        final int slot = id << SUB_ID_BITS | subID & SUB_ID_COUNT - 1;
+        // Negative IDs give a negative slot, which is unknown like the IDs past the end
+        return slot >= 0 && slot < indices.length ? indices[slot] : airIndex;
+    }
+
+    /**
+     * Returns the material at the index in this table.
+     *
+     * @param index The material index
+     * @return The material
+     */
+    public Material getMaterial(int index) {
+        return materials[index];
+    }
+
+    /**
+     * Returns the number of distinct materials in the table. The indices go from zero to this number, exclusive.
+     *
+     * @return The number of materials
+     */
+    public int getMaterialCount() {
+        return materials.length;
+    }
+
+    /**
+     * Returns true if the material for the ID and sub-ID is visible, see {@link Material#isVisible()}.
+     *
+     * @param id The material ID
+     * @param subID The material sub-ID
+     * @return Whether or not the material is visible
+     */
+    public boolean isVisible(short id, short subID) {
+        return isVisible(getIndex(id, subID));
+    }
+
+    /**
+     * Returns true if the material at the index is visible, see {@link Material#isVisible()}.
+     *
+     * @param index The material index
+     * @return Whether or not the material is visible
+     */
+    public boolean isVisible(int index) {
+        return (visible[index >> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * Returns true if the material for the ID and sub-ID is opaque, see {@link Material#isOpaque()}.
+     *
+     * @param id The material ID
+     * @param subID The material sub-ID
+     * @return Whether or not the material is opaque
+     */
+    public boolean isOpaque(short id, short subID) {
+        return isOpaque(getIndex(id, subID));
+    }
+
+    /**
+     * Returns true if the material at the index is opaque, see {@link Material#isOpaque()}.
+     *
+     * @param index The material index
+     * @return Whether or not the material is opaque
+     */
+    public boolean isOpaque(int index) {
+        return (opaque[index >> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * Returns true if the first material occludes the face of the second one, see {@link Material#occludes(Material, BlockFace)}.
+     *
+     * @param index The index of the occluding material
+     * @param other The index of the occluded material
+     * @param face The face of the occluded material
+     * @return Whether or not the face is occluded
+     */
+    public boolean occludes(int index, int other, BlockFace face) {
+        return (occlusion[index * materials.length + other] & 1 << face.ordinal()) != 0;
+    }
+
+    /**
+     * Returns the face to draw between two adjacent materials on an axis, if any. The back material comes before the front one on the axis. The face of the back material is drawn if it's visible
+     * and not occluded by the front material, else the face of the front material is drawn under the same conditions.
+     *
+     * @param back The index of the material behind on the axis
+     * @param front The index of the material in front on the axis
+     * @param axis The faces of the axis, the negative one first
+     * @return The face to draw, facing out of its material, or null if there's none
+     */
+    public BlockFace getFace(int back, int front, BlockFaces axis) {
+        if (isVisible(back) && !occludes(front, back, axis.get(0))) {
+            return axis.get(1);
+        }
+        if (isVisible(front) && !occludes(back, front, axis.get(1))) {
+            return axis.get(0);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.decode;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Inflates compressed chunk data, and can be used concurrently. Each thread has its own {@link java.util.zip.Inflater}, which is reset after every use instead of being ended. The output buffers are
+ * pooled: they are acquired when inflating, and must be returned with {@link #release(byte[])} once the data has been consumed. The compressed data is read straight from the network buffer, through
+ * its backing array if it has one, or else in small windows copied to a per thread array.
+ */
+public class ChunkInflater {
+    private static final int INPUT_WINDOW_SIZE = 8192;
+    private static final int MAX_POOLED_BUFFERS = 16;
+    private final ThreadLocal<ThreadInflater> inflaters = new ThreadLocal<ThreadInflater>() {
+        @Override
+        protected ThreadInflater initialValue() {
+            return new ThreadInflater();
+        }
+    };
+    private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledBuffers = new AtomicInteger(0);
+
+    /**
+     * Inflates the compressed data into a pooled buffer, which must be released once the data has been consumed. The buffer can be longer than the expected length, the extra bytes are garbage. The
+     * compressed data is left untouched, including its reader index.
+     *
+     * @param compressedData The compressed data
+     * @param length The expected length of the inflated data
+     * @return The buffer containing the inflated data
+     * @throws IOException If the data is corrupted or if all bytes couldn't be inflated
+     */
+    public byte[] inflate(ByteBuf compressedData, int length) throws IOException {
+        final byte[] output = acquire(length);
+        try {
+            inflaters.get().inflate(compressedData, output, length);
+        } catch (IOException ex) {
+            release(output);
+            throw ex;
+        }
+        return output;
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #inflate(io.netty.buffer.ByteBuf, int)} to the pool, to be reused. The buffer shouldn't be used after this.
+     *
+     * @param buffer The buffer to release
+     */
+    public void release(byte[] buffer) {
+        if (pooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            buffers.add(buffer);
+        } else {
+            pooledBuffers.decrementAndGet();
+        }
+    }
+
+    private byte[] acquire(int length) {
+        final byte[] buffer = buffers.poll();
+        if (buffer == null) {
+            return new byte[length];
+        }
+        pooledBuffers.decrementAndGet();
+        // Buffers that are too small are discarded, so the pool settles on the largest lengths
+        return buffer.length >= length ? buffer : new byte[length];
+    }
+
+    private static class ThreadInflater {
+        private final Inflater inflater = new Inflater();
+        private final byte[] window = new byte[INPUT_WINDOW_SIZE];
+
+        private void inflate(ByteBuf compressedData, byte[] output, int length) throws IOException {
+            int readIndex = compressedData.readerIndex();
+            final int endIndex = compressedData.writerIndex();
+            if (compressedData.hasArray()) {
+                // No need to copy, we can inflate from the backing array
+                inflater.setInput(compressedData.array(), compressedData.arrayOffset() + readIndex, endIndex - readIndex);
+                readIndex = endIndex;
+            }
+            int inflated = 0;
+            try {
+                while (inflated < length && !inflater.finished()) {
+                    if (inflater.needsInput()) {
+                        if (readIndex >= endIndex) {
+                            break;
+                        }
+                        // Feed the next window of data from the buffer
+                        final int count = Math.min(window.length, endIndex - readIndex);
+                        compressedData.getBytes(readIndex, window, 0, count);
+                        readIndex += count;
+                        inflater.setInput(window, 0, count);
+                    }
+                    final int count = inflater.inflate(output, inflated, length - inflated);
+                    if (count == 0 && inflater.needsDictionary()) {
+                        break;
+                    }
+                    inflated += count;
+                }
+            } catch (DataFormatException ex) {
+                throw new IOException("Chunk data is corrupted!", ex);
+            } finally {
+                inflater.reset();
+            }
+            if (inflated < length) {
+                throw new IOException("Chunk data is incomplete, expected " + length + " bytes but got " + inflated);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.decode;
+
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ * Decodes the sections of a chunk column from the inflated data, directly into the block ID and data arrays used to construct a {@link org.spoutcraft.client.universe.world.Chunk}. The column data
+ * starts with the block IDs of all the present sections, followed by their metadata, block light, sky light (optional) and additional data (optional) half byte arrays, and ends with the biomes if the
+ * column is complete. Decoding doesn't allocate: the arrays are owned by the decoder and overwritten by each section, so they must be consumed before decoding the next one. A decoder must only be
+ * used by one thread at a time.
+ */
+public class ChunkSectionDecoder {
+    // Masks for the low and high half bytes of four bytes spread in 16 bit lanes, see spread(byte[], int)
+    private static final long LOW_HALF_BYTES = 0x000F000F000F000FL;
+    private static final long HIGH_HALF_BYTES = 0x00F000F000F000F0L;
+    private final short[] blockIDs = new short[Chunk.BLOCKS.VOLUME];
+    private final short[] blockData = new short[Chunk.BLOCKS.VOLUME];
+    private byte[] data;
+    private int offset;
+    private short primaryBitMap;
+    private short additionalDataBitMap;
+    private boolean hasSkyLight;
+    private int sectionCount;
+
+    /**
+     * Sets the column from which to decode the sections.
+     *
+     * @param data The inflated data
+     * @param offset The offset of the column's data in the inflated data
+     * @param primaryBitMap The bit map of the sections present in the column
+     * @param additionalDataBitMap The bit map of the sections with additional data
+     * @param hasSkyLight True if the data includes sky light
+     */
+    public void setColumn(byte[] data, int offset, short primaryBitMap, short additionalDataBitMap, boolean hasSkyLight) {
+        this.data = data;
+        this.offset = offset;
+        this.primaryBitMap = primaryBitMap;
+        this.additionalDataBitMap = additionalDataBitMap;
+        this.hasSkyLight = hasSkyLight;
+        sectionCount = Integer.bitCount(primaryBitMap & 0xFFFF);
+    }
+
+    /**
+     * Returns true if the section is present in the column.
+     *
+     * @param section The section index, ground up
+     * @return Whether or not the section is present
+     */
+    public boolean hasSection(int section) {
+        return (primaryBitMap >> section & 1) != 0;
+    }
+
+    /**
+     * Decodes the section into the block ID and data arrays. The section must be present in the column.
+     *
+     * @param section The section index, ground up
+     * @see #getBlockIDs()
+     * @see #getBlockData()
+     */
+    public void decodeSection(int section) {
+        if (!hasSection(section)) {
+            throw new IllegalArgumentException("Section " + section + " isn't present in the column");
+        }
+        // Index of the section amongst the present ones, which is the index of its data in each array
+        final int index = Integer.bitCount(primaryBitMap & ((1 << section) - 1));
+        final int idOffset = offset + index * Chunk.BLOCKS.VOLUME;
+        final int metadataOffset = offset + sectionCount * Chunk.BLOCKS.VOLUME + index * Chunk.BLOCKS.HALF_VOLUME;
+        final int lightOffset = metadataOffset + sectionCount * Chunk.BLOCKS.HALF_VOLUME;
+        final int skyLightOffset = lightOffset + sectionCount * Chunk.BLOCKS.HALF_VOLUME;
+        // Block IDs are unsigned bytes
+        for (int i = 0; i < Chunk.BLOCKS.VOLUME; i++) {
+            blockIDs[i] = (short) (data[idOffset + i] & 0xFF);
+        }
+        // Additional data, if any, provides the 4 high bits of the IDs
+        if ((additionalDataBitMap >> section & 1) != 0) {
+            final int additionalIndex = Integer.bitCount(additionalDataBitMap & ((1 << section) - 1));
+            final int additionalOffset = offset + sectionCount * (Chunk.BLOCKS.VOLUME + Chunk.BLOCKS.HALF_VOLUME * (hasSkyLight ? 3 : 2)) + additionalIndex * Chunk.BLOCKS.HALF_VOLUME;
+            for (int i = 0, j = 0; i < Chunk.BLOCKS.HALF_VOLUME; i++, j += 2) {
+                final int additional = data[additionalOffset + i];
+                blockIDs[j] |= (additional & 0xF) << 8;
+                blockIDs[j + 1] |= (additional & 0xF0) << 4;
+            }
+        }
+        // Expand the metadata, light and sky light half bytes into the block data in a single pass, two blocks per byte.
+        // The even block is in the low half byte. Final block data order: MMMM-MMMM-BBBB-SSSS (M = metadata, B = block light, S = sky light)
+        // Four bytes of each array are spread into the 16 bit lanes of a long, so the block data of four even and four odd blocks is built with a few shifts and masks
+        for (int i = 0, j = 0; i < Chunk.BLOCKS.HALF_VOLUME; i += 4, j += 8) {
+            final long metadata = spread(data, metadataOffset + i);
+            final long light = spread(data, lightOffset + i);
+            final long skyLight = hasSkyLight ? spread(data, skyLightOffset + i) : 0;
+            final long even = (metadata & LOW_HALF_BYTES) << 8 | (light & LOW_HALF_BYTES) << 4 | skyLight & LOW_HALF_BYTES;
+            final long odd = (metadata & HIGH_HALF_BYTES) << 4 | light & HIGH_HALF_BYTES | skyLight >>> 4 & LOW_HALF_BYTES;
+            blockData[j] = (short) even;
+            blockData[j + 1] = (short) odd;
+            blockData[j + 2] = (short) (even >>> 16);
+            blockData[j + 3] = (short) (odd >>> 16);
+            blockData[j + 4] = (short) (even >>> 32);
+            blockData[j + 5] = (short) (odd >>> 32);
+            blockData[j + 6] = (short) (even >>> 48);
+            blockData[j + 7] = (short) (odd >>> 48);
+        }
+    }
+
+    // Spreads the four bytes at the offset into the 16 bit lanes of a long, the first byte in the lowest lane
+    private static long spread(byte[] data, int offset) {
+        return data[offset] & 0xFFL | (data[offset + 1] & 0xFFL) << 16 | (data[offset + 2] & 0xFFL) << 32 | (data[offset + 3] & 0xFFL) << 48;
+    }
+
+    /**
+     * Returns the block IDs of the last decoded section. The array is reused by the next decoded section.
+     *
+     * @return The block IDs
+     */
+    public short[] getBlockIDs() {
+        return blockIDs;
+    }
+
+    /**
+     * Returns the block data of the last decoded section, packed using the {@link org.spoutcraft.client.universe.world.Chunk} data masks. The array is reused by the next decoded section.
+     *
+     * @return The block data
+     */
+    public short[] getBlockData() {
+        return blockData;
+    }
+
+    /**
+     * Computes the length of the inflated data for a column.
+     *
+     * @param primaryBitMap The bit map of the sections present in the column
+     * @param additionalDataBitMap The bit map of the sections with additional data
+     * @param hasSkyLight True if the data includes sky light
+     * @param groundUpContinuous True if this is the entire column, in which case biome data is included
+     * @return The length of the inflated data
+     */
+    public static int getColumnLength(short primaryBitMap, short additionalDataBitMap, boolean hasSkyLight, boolean groundUpContinuous) {
+        // Length = sections * (Blocks + (Metadata + Light + (optionally) SkyLight)) + additionalDataSections * AdditionalData + (optionally) Biome
+        final int sections = Integer.bitCount(primaryBitMap & 0xFFFF);
+        final int additionalDataSections = Integer.bitCount(additionalDataBitMap & 0xFFFF);
+        int length = sections * (Chunk.BLOCKS.VOLUME + Chunk.BLOCKS.HALF_VOLUME * (hasSkyLight ? 3 : 2)) + additionalDataSections * Chunk.BLOCKS.HALF_VOLUME;
+        if (groundUpContinuous) {
+            length += Chunk.BLOCKS.AREA;
+        }
+        return length;
+    }
+}
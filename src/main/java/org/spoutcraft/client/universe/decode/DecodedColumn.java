@@ -0,0 +1,132 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.decode;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.spoutcraft.client.universe.world.Chunk;
+import org.spoutcraft.client.universe.world.World;
+
+/**
+ * A column of chunks decoded by the {@link org.spoutcraft.client.universe.decode.ParallelChunkDecoder}, ready to be installed in its world. A column without chunks and flagged as unloaded
+ * indicates that the whole column should be removed from the world instead.
+ */
+public class DecodedColumn {
+    private final World world;
+    private final int x;
+    private final int z;
+    private final List<Chunk> chunks;
+    private final boolean groundUpContinuous;
+    private final boolean unload;
+
+    private DecodedColumn(World world, int x, int z, List<Chunk> chunks, boolean groundUpContinuous, boolean unload) {
+        this.world = world;
+        this.x = x;
+        this.z = z;
+        this.chunks = chunks;
+        this.groundUpContinuous = groundUpContinuous;
+        this.unload = unload;
+    }
+
+    /**
+     * Returns the world in which the column should be installed.
+     *
+     * @return The column's world
+     */
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * Returns the x-axis chunk coordinate of the column.
+     *
+     * @return The column's x coordinate
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Returns the z-axis chunk coordinate of the column.
+     *
+     * @return The column's z coordinate
+     */
+    public int getZ() {
+        return z;
+    }
+
+    /**
+     * Returns the decoded chunks, which will replace those at the same positions in the world. Empty for unloaded columns.
+     *
+     * @return The decoded chunks
+     */
+    public List<Chunk> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Returns true if the decoded chunks are the entire column, in which case they replace the whole column in the world. Otherwise only the chunks at the same positions are replaced.
+     *
+     * @return Whether or not the chunks are the entire column
+     */
+    public boolean isGroundUpContinuous() {
+        return groundUpContinuous;
+    }
+
+    /**
+     * Returns true if the column should be removed from the world instead of being installed.
+     *
+     * @return Whether or not the column is unloaded
+     */
+    public boolean isUnload() {
+        return unload;
+    }
+
+    /**
+     * Creates a new decoded column, with chunks to install in the world.
+     *
+     * @param world The world in which to install the column
+     * @param x The x-axis chunk coordinate of the column
+     * @param z The z-axis chunk coordinate of the column
+     * @param chunks The decoded chunks
+     * @param groundUpContinuous Whether or not the chunks are the entire column
+     * @return The decoded column
+     */
+    public static DecodedColumn loaded(World world, int x, int z, List<Chunk> chunks, boolean groundUpContinuous) {
+        return new DecodedColumn(world, x, z, chunks, groundUpContinuous, false);
+    }
+
+    /**
+     * Creates a new decoded column signaling that the column should be removed from the world.
+     *
+     * @param world The world from which to remove the column
+     * @param x The x-axis chunk coordinate of the column
+     * @param z The z-axis chunk coordinate of the column
+     * @return The decoded column
+     */
+    public static DecodedColumn unloaded(World world, int x, int z) {
+        return new DecodedColumn(world, x, z, Collections.<Chunk>emptyList(), true, true);
+    }
+}
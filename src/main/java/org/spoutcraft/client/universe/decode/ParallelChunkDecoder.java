@@ -0,0 +1,359 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.decode;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import org.spoutcraft.client.network.message.play.ChunkDataBulkMessage;
+import org.spoutcraft.client.network.message.play.ChunkDataMessage;
+import org.spoutcraft.client.universe.block.material.Materials;
+import org.spoutcraft.client.universe.world.Chunk;
+import org.spoutcraft.client.universe.world.World;
+
+/**
+ * Decodes chunk data messages in parallel, off the universe thread. The compressed data is inflated by a {@link org.spoutcraft.client.universe.decode.ChunkInflater} and unpacked into {@link org.spoutcraft.client.universe.world.Chunk}s, using a {@link org.spoutcraft.client.universe.decode.ChunkSectionDecoder} per thread, by a {@link
+ * java.util.concurrent.ForkJoinPool}, the columns of a bulk message being unpacked in parallel once the message data has been inflated. Decoded columns are returned by {@link #poll()} in the order
+ * the messages were queued, so that a column update never overtakes a previous one. Queuing and polling must be done from the same thread.
+ *
+ * @see org.spoutcraft.client.universe.decode.DecodedColumn
+ */
+public class ParallelChunkDecoder {
+    public static final int MAX_CHUNK_COLUMN_SECTIONS = World.CHUNK_COLUMN_HEIGHT;
+    private static final ByteBuf UNLOAD_CHUNKS_IN_COLUMN = Unpooled.wrappedBuffer(new byte[]{0x78, (byte) 0x9C, 0x63, 0x64, 0x1C, (byte) 0xD9, 0x00, 0x00, (byte) 0x81, (byte) 0x80, 0x01, 0x01});
+    private final ForkJoinPool pool;
+    private final ChunkInflater inflater = new ChunkInflater();
+    private final ThreadLocal<ChunkSectionDecoder> sectionDecoders = new ThreadLocal<ChunkSectionDecoder>() {
+        @Override
+        protected ChunkSectionDecoder initialValue() {
+            return new ChunkSectionDecoder();
+        }
+    };
+    private final Queue<MessageDecodeTask> pending = new ArrayDeque<>();
+    private DecodedColumn[] polled = null;
+    private int polledIndex = 0;
+
+    /**
+     * Constructs a new parallel chunk decoder using the desired amount of threads.
+     *
+     * @param threads The number of decoding threads
+     */
+    public ParallelChunkDecoder(int threads) {
+        pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Queues a chunk data message to be decoded.
+     *
+     * @param world The world in which the decoded column will be installed
+     * @param message The message to decode
+     */
+    public void queue(World world, ChunkDataMessage message) {
+        queue(new ColumnDecodeTask(world, message));
+    }
+
+    /**
+     * Queues a chunk data bulk message to be decoded.
+     *
+     * @param world The world in which the decoded columns will be installed
+     * @param message The message to decode
+     */
+    public void queue(World world, ChunkDataBulkMessage message) {
+        queue(new BulkDecodeTask(world, message));
+    }
+
+    private void queue(MessageDecodeTask task) {
+        pool.execute(task);
+        pending.add(task);
+    }
+
+    /**
+     * Returns the next decoded column, in the order in which the messages were queued. Returns null if there are no more columns, or if the next one hasn't finished decoding yet.
+     *
+     * @return The next decoded column, or null if none are ready
+     * @throws ExecutionException If the next message failed to decode. Its columns are discarded, and polling can resume with the following ones
+     */
+    public DecodedColumn poll() throws ExecutionException {
+        while (polled == null || polledIndex >= polled.length) {
+            final MessageDecodeTask next = pending.peek();
+            if (next == null || !next.isDone()) {
+                return null;
+            }
+            pending.remove();
+            polled = null;
+            polledIndex = 0;
+            try {
+                polled = next.get();
+            } catch (InterruptedException ex) {
+                // Can't happen, the task is already done
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return polled[polledIndex++];
+    }
+
+    /**
+     * Shuts down the pool used for decoding, discarding any message pending or being decoded. The compressed data of the messages that haven't started decoding is released, the others release
+     * their own.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+        for (MessageDecodeTask task : pending) {
+            task.discard();
+        }
+        pending.clear();
+        // The decoded columns only hold heap arrays, there's nothing else to release
+        polled = null;
+    }
+
+    /**
+     * Unpacks the chunks of a column from the decompressed data.
+     *
+     * @param world The world of the column
+     * @param columnX The column's x coordinate
+     * @param columnZ The column's z coordinate
+     * @param primaryBitMap The bit map of the sections present in the column
+     * @param additionalDataBitMap The bit map of the sections with additional data
+     * @param groundUpContinuous True if this is the entire column, false if not
+     * @param hasSkyLight True if the data has sky light
+     * @param decompressedData The decompressed data
+     * @param offset The offset of the column's data in the decompressed data
+     * @return The decoded column
+     */
+    private DecodedColumn unpack(World world, int columnX, int columnZ, short primaryBitMap, short additionalDataBitMap, boolean groundUpContinuous, boolean hasSkyLight, byte[] decompressedData,
+            int offset) {
+        final ChunkSectionDecoder sectionDecoder = sectionDecoders.get();
+        sectionDecoder.setColumn(decompressedData, offset, primaryBitMap, additionalDataBitMap, hasSkyLight);
+        return DecodedColumn.loaded(world, columnX, columnZ, populateChunks(world, columnX, columnZ, sectionDecoder), groundUpContinuous);
+    }
+
+    /**
+     * Creates one {@link org.spoutcraft.client.universe.world.Chunk} for each section present in the column. The chunk coordinates are the column coordinates and the section index.
+     *
+     * @param world The world of the column
+     * @param columnX The column's x coordinate
+     * @param columnZ The column's z coordinate
+     * @param sectionDecoder The section decoder, set to the column
+     * @return The chunks of the column
+     */
+    static List<Chunk> populateChunks(World world, int columnX, int columnZ, ChunkSectionDecoder sectionDecoder) {
+        final List<Chunk> chunks = new ArrayList<>(MAX_CHUNK_COLUMN_SECTIONS);
+        for (int i = 0; i < MAX_CHUNK_COLUMN_SECTIONS; i++) {
+            if (!sectionDecoder.hasSection(i)) {
+                continue;
+            }
+            sectionDecoder.decodeSection(i);
+            final short[] blockIds = sectionDecoder.getBlockIDs();
+            //TODO Test Code, remove once we have all materials in place!
+            final short solid = Materials.SOLID.getID();
+            final short air = Materials.AIR.getID();
+            for (int idIndex = 0; idIndex < blockIds.length; idIndex++) {
+                blockIds[idIndex] = blockIds[idIndex] != 0 ? solid : air;
+            }
+            // The decoder arrays are copied by the block store, so they can be reused for the next section
+            chunks.add(new Chunk(world, new Vector3i(columnX, i, columnZ), blockIds, sectionDecoder.getBlockData()));
+        }
+        return chunks;
+    }
+
+    /**
+     * Decodes the columns of a message, which owns compressed data that must be released once. Either the task decodes the message and releases the data, or it's discarded before starting and
+     * the data is released then.
+     */
+    private abstract static class MessageDecodeTask extends RecursiveTask<DecodedColumn[]> {
+        private static final long serialVersionUID = 1L;
+        private static final DecodedColumn[] NO_COLUMNS = new DecodedColumn[0];
+        private final AtomicBoolean started = new AtomicBoolean(false);
+
+        @Override
+        protected DecodedColumn[] compute() {
+            if (!started.compareAndSet(false, true)) {
+                // Discarded, the data has already been released
+                return NO_COLUMNS;
+            }
+            return decode();
+        }
+
+        /**
+         * Releases the compressed data of the message if the decoding hasn't started, and prevents it from starting.
+         */
+        private void discard() {
+            if (started.compareAndSet(false, true)) {
+                getCompressedData().release();
+            }
+        }
+
+        /**
+         * Returns the compressed data of the message.
+         *
+         * @return The compressed data
+         */
+        protected abstract ByteBuf getCompressedData();
+
+        /**
+         * Decodes the message, releasing its compressed data once inflated.
+         *
+         * @return The decoded columns
+         */
+        protected abstract DecodedColumn[] decode();
+    }
+
+    /**
+     * Decodes a single column from a {@link org.spoutcraft.client.network.message.play.ChunkDataMessage}.
+     */
+    private class ColumnDecodeTask extends MessageDecodeTask {
+        private static final long serialVersionUID = 1L;
+        private final World world;
+        private final ChunkDataMessage message;
+
+        private ColumnDecodeTask(World world, ChunkDataMessage message) {
+            this.world = world;
+            this.message = message;
+        }
+
+        @Override
+        protected ByteBuf getCompressedData() {
+            return message.getCompressedData();
+        }
+
+        @Override
+        protected DecodedColumn[] decode() {
+            final ByteBuf compressedData = message.getCompressedData();
+            final byte[] decompressedData;
+            try {
+                // Check if we should remove a column of chunks
+                if (ByteBufUtil.equals(UNLOAD_CHUNKS_IN_COLUMN, compressedData)) {
+                    return new DecodedColumn[]{DecodedColumn.unloaded(world, message.getColumnX(), message.getColumnZ())};
+                }
+                final int length = ChunkSectionDecoder.getColumnLength(message.getPrimaryBitMap(), message.getAdditionalDataBitMap(), true, message.isGroundUpContinuous());
+                decompressedData = inflater.inflate(compressedData, length);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            } finally {
+                compressedData.release();
+            }
+            try {
+                return new DecodedColumn[]{unpack(world, message.getColumnX(), message.getColumnZ(), message.getPrimaryBitMap(), message.getAdditionalDataBitMap(), message.isGroundUpContinuous(), true,
+                        decompressedData, 0)};
+            } finally {
+                inflater.release(decompressedData);
+            }
+        }
+    }
+
+    /**
+     * Decodes all the columns from a {@link org.spoutcraft.client.network.message.play.ChunkDataBulkMessage}. The data is inflated as a whole, since it's a single stream, then the columns are
+     * unpacked in parallel.
+     */
+    private class BulkDecodeTask extends MessageDecodeTask {
+        private static final long serialVersionUID = 1L;
+        private final World world;
+        private final ChunkDataBulkMessage message;
+
+        private BulkDecodeTask(World world, ChunkDataBulkMessage message) {
+            this.world = world;
+            this.message = message;
+        }
+
+        @Override
+        protected ByteBuf getCompressedData() {
+            return message.getCompressedData();
+        }
+
+        @Override
+        protected DecodedColumn[] decode() {
+            final int columnCount = message.getColumnCount();
+            // Find where each column starts in the decompressed data
+            final int[] offsets = new int[columnCount];
+            int length = 0;
+            for (int i = 0; i < columnCount; i++) {
+                offsets[i] = length;
+                length += ChunkSectionDecoder.getColumnLength(message.getPrimaryBitMaps()[i], message.getAdditionalDataBitMaps()[i], message.hasSkyLight(), true);
+            }
+            final byte[] decompressedData;
+            try {
+                decompressedData = inflater.inflate(message.getCompressedData(), length);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            } finally {
+                message.getCompressedData().release();
+            }
+            // The inflated data is shared by the unpacking tasks, it can only be released once they're all done
+            try {
+                final List<ColumnUnpackTask> tasks = new ArrayList<>(columnCount);
+                for (int i = 0; i < columnCount; i++) {
+                    tasks.add(new ColumnUnpackTask(world, message, i, decompressedData, offsets[i]));
+                }
+                invokeAll(tasks);
+                final DecodedColumn[] columns = new DecodedColumn[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    columns[i] = tasks.get(i).join();
+                }
+                return columns;
+            } finally {
+                inflater.release(decompressedData);
+            }
+        }
+    }
+
+    /**
+     * Unpacks a column of a {@link org.spoutcraft.client.network.message.play.ChunkDataBulkMessage} from the inflated data.
+     */
+    private class ColumnUnpackTask extends RecursiveTask<DecodedColumn> {
+        private static final long serialVersionUID = 1L;
+        private final World world;
+        private final ChunkDataBulkMessage message;
+        private final int column;
+        private final byte[] decompressedData;
+        private final int offset;
+
+        private ColumnUnpackTask(World world, ChunkDataBulkMessage message, int column, byte[] decompressedData, int offset) {
+            this.world = world;
+            this.message = message;
+            this.column = column;
+            this.decompressedData = decompressedData;
+            this.offset = offset;
+        }
+
+        @Override
+        protected DecodedColumn compute() {
+            return unpack(world, message.getColumnXs()[column], message.getColumnZs()[column], message.getPrimaryBitMaps()[column], message.getAdditionalDataBitMaps()[column], true, message.hasSkyLight(),
+                    decompressedData, offset);
+        }
+    }
+}
@@ -23,9 +23,10 @@
  */
 package org.spoutcraft.client.universe.snapshot;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.flowpowered.commons.store.block.AtomicBlockStore;
 import com.flowpowered.math.vector.Vector3i;
@@ -35,15 +36,20 @@ import org.spoutcraft.client.universe.block.material.Material;
 import org.spoutcraft.client.universe.world.Chunk;
 
 /**
- *
+ * An immutable view of a chunk, updated from the universe thread. Each update publishes a new version of the snapshot state, so reads never lock and see the state of a single update. Updates must
+ * only be done from one thread at a time. When all the blocks of the chunk have the same ID and data, which the palette of the block store tells cheaply, the version stores that single state
+ * instead of the block arrays, see {@link #isUniform()}. The block arrays are double buffered: an update patches those of the version published before the current one, once it has no readers left.
+ * For many reads, acquire the version once, see {@link #acquireVersion()}.
  */
 public class ChunkSnapshot {
-    private final short[] blockIDs = new short[Chunk.BLOCKS.VOLUME];
-    private final short[] blockData = new short[Chunk.BLOCKS.VOLUME];
+    private static final Version EMPTY_VERSION = new Version(0, 0, true, Collections.<Vector3i>emptyList());
     private final WorldSnapshot world;
     private final Vector3i position;
-    private long updateNumber = 0;
-    private final ReadWriteLock lock = new ReentrantReadWriteLock(true);
+    private volatile Version version = EMPTY_VERSION;
+    // Only accessed by the updating thread
+    private Chunk source = null;
+    // The version published before the current one, its arrays are reused once it has no readers left
+    private Version retired = null;
 
     public ChunkSnapshot(WorldSnapshot world, Vector3i position) {
         this.world = world;
@@ -71,13 +77,12 @@ public class ChunkSnapshot {
     }
 
     public Block getBlock(Vector3i position) {
-        final Lock lock = this.lock.readLock();
-        lock.lock();
+        final Version version = acquireVersion();
         try {
             final int index = getBlockIndex(position);
-            return new Block(position, blockIDs[index], blockData[index]);
+            return new Block(position, version.getBlockID(index), version.getBlockData(index));
         } finally {
-            lock.unlock();
+            version.release();
         }
     }
 
@@ -90,49 +95,142 @@ public class ChunkSnapshot {
     }
 
     public Material getMaterial(int x, int y, int z) {
-        final Lock lock = this.lock.readLock();
-        lock.lock();
+        final Version version = acquireVersion();
         try {
-            final int index = getBlockIndex(x, y, z);
-            return Material.get(blockIDs[index], Chunk.SUB_ID_MASK.extract(blockData[index]));
+            return version.getMaterial(x, y, z);
         } finally {
-            lock.unlock();
+            version.release();
         }
     }
 
-    public short getBlockLight(int x, int y, int z) {
-        final Lock lock = this.lock.readLock();
-        lock.lock();
+    public short getBlockID(int x, int y, int z) {
+        final Version version = acquireVersion();
         try {
-            return Chunk.BLOCK_LIGHT_MASK.extract(blockData[getBlockIndex(x, y, z)]);
+            return version.getBlockID(x, y, z);
         } finally {
-            lock.unlock();
+            version.release();
         }
     }
 
-    public short getBlockSkyLight(int x, int y, int z) {
-        final Lock lock = this.lock.readLock();
-        lock.lock();
+    public short getBlockData(int x, int y, int z) {
+        final Version version = acquireVersion();
         try {
-            return Chunk.BLOCK_SKY_LIGHT_MASK.extract(blockData[getBlockIndex(x, y, z)]);
+            return version.getBlockData(x, y, z);
         } finally {
-            lock.unlock();
+            version.release();
         }
     }
 
-    public long getUpdateNumber() {
-        final Lock lock = this.lock.readLock();
-        lock.lock();
+    public short getBlockLight(int x, int y, int z) {
+        return Chunk.BLOCK_LIGHT_MASK.extract(getBlockData(x, y, z));
+    }
+
+    public short getBlockSkyLight(int x, int y, int z) {
+        return Chunk.BLOCK_SKY_LIGHT_MASK.extract(getBlockData(x, y, z));
+    }
+
+    /**
+     * Returns true if all the blocks of the snapshot have the same ID and data (including the light). These snapshots don't store the block arrays.
+     *
+     * @return Whether or not the snapshot is uniform
+     */
+    public boolean isUniform() {
+        // The arrays aren't read, the version doesn't need to be acquired
+        return version.blockIDs == null;
+    }
+
+    /**
+     * Copies the blocks in the box into the destination arrays, all from the same snapshot state, see {@link org.spoutcraft.client.universe.snapshot.ChunkSnapshot.Version#copyBlocks(int, int,
+     * int, int, int, int, int, int, int, short[], short[], int)}.
+     *
+     * @param minX The minimum x coordinate, inclusive
+     * @param minY The minimum y coordinate, inclusive
+     * @param minZ The minimum z coordinate, inclusive
+     * @param maxX The maximum x coordinate, exclusive
+     * @param maxY The maximum y coordinate, exclusive
+     * @param maxZ The maximum z coordinate, exclusive
+     * @param offsetX The offset to add to the x coordinate in the destination arrays
+     * @param offsetY The offset to add to the y coordinate in the destination arrays
+     * @param offsetZ The offset to add to the z coordinate in the destination arrays
+     * @param blockIDs The destination array for the block IDs
+     * @param blockData The destination array for the block data
+     * @param size The size of the destination arrays on each axis
+     */
+    public void copyBlocks(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int offsetX, int offsetY, int offsetZ, short[] blockIDs, short[] blockData, int size) {
+        final Version version = acquireVersion();
         try {
-            return updateNumber;
+            version.copyBlocks(minX, minY, minZ, maxX, maxY, maxZ, offsetX, offsetY, offsetZ, blockIDs, blockData, size);
         } finally {
-            lock.unlock();
+            version.release();
         }
     }
 
+    /**
+     * Acquires the current state of the snapshot, for many reads. The accessors of the snapshot acquire and release the state on each call, which costs two atomic operations on a counter shared by
+     * all the readers. Reading from the acquired state instead costs nothing more than reading the arrays, and all the reads see the same update. The state must be released once read, after
+     * which it must not be used anymore. Until then, the next update can't reuse its arrays and copies them instead, so it shouldn't be held longer than needed.
+     *
+     * @return The current state, to release when done
+     */
+    public Version acquireVersion() {
+        while (true) {
+            final Version version = this.version;
+            version.readers.incrementAndGet();
+            // If it was replaced in the meantime, its arrays might be reused, so use the new one
+            if (version == this.version) {
+                return version;
+            }
+            version.readers.decrementAndGet();
+        }
+    }
+
+    public long getUpdateNumber() {
+        return version.updateNumber;
+    }
+
+    /**
+     * Returns true if the last update changed the entire snapshot, in which case {@link #getChangedBlocks()} is empty. This is always the case for the first update, and when the chunk
+     * is replaced.
+     *
+     * @return Whether or not the last update was a full update
+     */
+    public boolean isFullUpdate() {
+        return version.fullUpdate;
+    }
+
+    /**
+     * Returns the positions, relative to the chunk, of the blocks changed by the last update. Empty if the last update was a full one, see {@link #isFullUpdate()}.
+     *
+     * @return The blocks changed by the last update
+     */
+    public List<Vector3i> getChangedBlocks() {
+        return version.changedBlocks;
+    }
+
+    /**
+     * Returns the positions, relative to the chunk, of the blocks changed since the update number. The list is empty if the update number is the current one. Returns null if the changes aren't
+     * known, which is the case if they span more than the last update, or if the last update was a full one.
+     *
+     * @param updateNumber The update number to get the changes since
+     * @return The blocks changed since the update number, or null if unknown
+     */
+    public List<Vector3i> getChangedBlocksSince(long updateNumber) {
+        // Read the version once, so that the checks and the changes are from the same update
+        final Version version = this.version;
+        if (version.updateNumber == updateNumber) {
+            return Collections.emptyList();
+        }
+        if (version.fullUpdate || version.updateNumber != updateNumber + 1) {
+            return null;
+        }
+        return version.changedBlocks;
+    }
+
     /**
      * Updates the snapshot to the current chunk passed to the constructor. The chunk passed must be a the same location and world than the snapshot. Returns whether or not the snapshot state has
-     * changed. Clears the chunk block store dirty arrays.
+     * changed. Clears the chunk block store dirty arrays. Only the dirty blocks are copied from the chunk, unless the chunk isn't the one the snapshot was last updated from, or the dirty arrays have
+     * overflown, or the previous state was uniform. If the block store is uniform, only its single state is kept. The arrays of the version published before the current one are reused if it isn't
+     * read anymore, else new ones are allocated. The new state is published as a whole once the update is complete.
      *
      * @param current The current chunk to update from
      * @return Whether or not the snapshot state has changed
@@ -141,22 +239,65 @@ public class ChunkSnapshot {
         if (!current.getPosition().equals(position) || !current.getWorld().getID().equals(world.getID())) {
             throw new IllegalArgumentException("Cannot accept a chunk from another position or world");
         }
-        final Lock lock = this.lock.writeLock();
-        lock.lock();
-        try {
-            // TODO: update only the dirty blocks, unless the dirty arrays are overflown
-            final AtomicBlockStore blocks = current.getBlocks();
-            if (blocks.isDirty()) {
-                blocks.getBlockIdArray(blockIDs);
-                blocks.getDataArray(blockData);
-                blocks.resetDirtyArrays();
-                updateNumber++;
-                return true;
-            }
+        final AtomicBlockStore blocks = current.getBlocks();
+        final Version previous = version;
+        final boolean fullUpdate = current != source || blocks.isDirtyOverflow();
+        if (!fullUpdate && !blocks.isDirty()) {
             return false;
-        } finally {
-            lock.unlock();
         }
+        source = current;
+        final List<Vector3i> changedBlocks;
+        if (fullUpdate) {
+            changedBlocks = Collections.emptyList();
+        } else {
+            final int dirtyCount = blocks.getDirtyBlocks();
+            final Vector3i[] changed = new Vector3i[dirtyCount];
+            for (int i = 0; i < dirtyCount; i++) {
+                changed[i] = blocks.getDirtyBlock(i);
+            }
+            changedBlocks = Collections.unmodifiableList(Arrays.asList(changed));
+        }
+        final long updateNumber = previous.updateNumber + 1;
+        // A reader acquiring the retired version after this check will see that it's not published, and retry with the current one
+        final boolean reusable = retired != null && retired.blockIDs != null && retired.readers.get() == 0;
+        final Version next;
+        if (blocks.isBlockUniform()) {
+            // The palette knows, no need to store the arrays
+            next = new Version(blocks.getFullData(0, 0, 0), updateNumber, fullUpdate, changedBlocks);
+        } else if (fullUpdate || previous.blockIDs == null) {
+            final short[] blockIDs = blocks.getBlockIdArray(reusable ? retired.blockIDs : new short[Chunk.BLOCKS.VOLUME]);
+            final short[] blockData = blocks.getDataArray(reusable ? retired.blockData : new short[Chunk.BLOCKS.VOLUME]);
+            next = new Version(blockIDs, blockData, updateNumber, fullUpdate, changedBlocks);
+        } else {
+            final short[] blockIDs;
+            final short[] blockData;
+            if (reusable && !previous.fullUpdate && previous.updateNumber == retired.updateNumber + 1) {
+                // The retired arrays only miss the changes of the previous update, copy them from the previous arrays
+                blockIDs = retired.blockIDs;
+                blockData = retired.blockData;
+                for (Vector3i block : previous.changedBlocks) {
+                    final int index = getBlockIndex(block);
+                    blockIDs[index] = previous.blockIDs[index];
+                    blockData[index] = previous.blockData[index];
+                }
+            } else {
+                // Copy the previous state, readers might still be using it
+                blockIDs = previous.blockIDs.clone();
+                blockData = previous.blockData.clone();
+            }
+            for (Vector3i block : changedBlocks) {
+                // Use the current state rather than the recorded one, in case the block changed again since
+                final int state = blocks.getFullData(block.getX(), block.getY(), block.getZ());
+                final int index = getBlockIndex(block);
+                blockIDs[index] = (short) (state >> 16);
+                blockData[index] = (short) state;
+            }
+            next = new Version(blockIDs, blockData, updateNumber, false, changedBlocks);
+        }
+        version = next;
+        retired = previous;
+        blocks.resetDirtyArrays();
+        return true;
     }
 
     @Override
@@ -188,4 +329,119 @@ public class ChunkSnapshot {
     private static int getBlockIndex(int x, int y, int z) {
         return (y & Chunk.BLOCKS.MASK) << Chunk.BLOCKS.DOUBLE_BITS | (z & Chunk.BLOCKS.MASK) << Chunk.BLOCKS.BITS | x & Chunk.BLOCKS.MASK;
     }
+
+    /**
+     * A state of the snapshot, as published by an update, acquired through {@link org.spoutcraft.client.universe.snapshot.ChunkSnapshot#acquireVersion()}. Block coordinates are relative to the
+     * chunk. The block arrays are null when the state is uniform, and they're only modified by the updates when the state is neither published nor acquired.
+     */
+    public static final class Version {
+        private final AtomicInteger readers = new AtomicInteger();
+        private final short[] blockIDs;
+        private final short[] blockData;
+        private final short uniformID;
+        private final short uniformData;
+        private final long updateNumber;
+        private final boolean fullUpdate;
+        private final List<Vector3i> changedBlocks;
+
+        private Version(short[] blockIDs, short[] blockData, long updateNumber, boolean fullUpdate, List<Vector3i> changedBlocks) {
+            this.blockIDs = blockIDs;
+            this.blockData = blockData;
+            uniformID = 0;
+            uniformData = 0;
+            this.updateNumber = updateNumber;
+            this.fullUpdate = fullUpdate;
+            this.changedBlocks = changedBlocks;
+        }
+
+        private Version(int uniformState, long updateNumber, boolean fullUpdate, List<Vector3i> changedBlocks) {
+            blockIDs = null;
+            blockData = null;
+            uniformID = (short) (uniformState >> 16);
+            uniformData = (short) uniformState;
+            this.updateNumber = updateNumber;
+            this.fullUpdate = fullUpdate;
+            this.changedBlocks = changedBlocks;
+        }
+
+        public Material getMaterial(int x, int y, int z) {
+            final int index = getBlockIndex(x, y, z);
+            return Material.get(getBlockID(index), Chunk.SUB_ID_MASK.extract(getBlockData(index)));
+        }
+
+        public short getBlockID(int x, int y, int z) {
+            return getBlockID(getBlockIndex(x, y, z));
+        }
+
+        public short getBlockData(int x, int y, int z) {
+            return getBlockData(getBlockIndex(x, y, z));
+        }
+
+        /**
+         * Returns true if all the blocks of the state have the same ID and data, see {@link org.spoutcraft.client.universe.snapshot.ChunkSnapshot#isUniform()}.
+         *
+         * @return Whether or not the state is uniform
+         */
+        public boolean isUniform() {
+            return blockIDs == null;
+        }
+
+        public long getUpdateNumber() {
+            return updateNumber;
+        }
+
+        /**
+         * Copies the block IDs and data in the box from the minimum coordinates (inclusive) to the maximum ones (exclusive), in chunk coordinates, into the destination arrays. The destination
+         * arrays are cubes of the given size, the block at (x, y, z) being copied to index ((y + offsetY) * size + z + offsetZ) * size + x + offsetX.
+         *
+         * @param minX The minimum x coordinate, inclusive
+         * @param minY The minimum y coordinate, inclusive
+         * @param minZ The minimum z coordinate, inclusive
+         * @param maxX The maximum x coordinate, exclusive
+         * @param maxY The maximum y coordinate, exclusive
+         * @param maxZ The maximum z coordinate, exclusive
+         * @param offsetX The offset to add to the x coordinate in the destination arrays
+         * @param offsetY The offset to add to the y coordinate in the destination arrays
+         * @param offsetZ The offset to add to the z coordinate in the destination arrays
+         * @param blockIDs The destination array for the block IDs
+         * @param blockData The destination array for the block data
+         * @param size The size of the destination arrays on each axis
+         */
+        public void copyBlocks(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int offsetX, int offsetY, int offsetZ, short[] blockIDs, short[] blockData, int size) {
+            final int length = maxX - minX;
+            if (this.blockIDs == null) {
+                for (int y = minY; y < maxY; y++) {
+                    for (int z = minZ; z < maxZ; z++) {
+                        final int destination = ((y + offsetY) * size + z + offsetZ) * size + minX + offsetX;
+                        Arrays.fill(blockIDs, destination, destination + length, uniformID);
+                        Arrays.fill(blockData, destination, destination + length, uniformData);
+                    }
+                }
+                return;
+            }
+            for (int y = minY; y < maxY; y++) {
+                for (int z = minZ; z < maxZ; z++) {
+                    final int source = getBlockIndex(minX, y, z);
+                    final int destination = ((y + offsetY) * size + z + offsetZ) * size + minX + offsetX;
+                    System.arraycopy(this.blockIDs, source, blockIDs, destination, length);
+                    System.arraycopy(this.blockData, source, blockData, destination, length);
+                }
+            }
+        }
+
+        /**
+         * Releases the state, which must not be read afterwards. Must be called exactly once per acquisition.
+         */
+        public void release() {
+            readers.decrementAndGet();
+        }
+
+        private short getBlockID(int index) {
+            return blockIDs == null ? uniformID : blockIDs[index];
+        }
+
+        private short getBlockData(int index) {
+            return blockData == null ? uniformData : blockData[index];
+        }
+    }
 }
@@ -24,32 +24,37 @@
 package org.spoutcraft.client.universe.snapshot;
 
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import com.flowpowered.commons.map.TripleIntObjectMap;
-import com.flowpowered.commons.map.impl.TTripleInt21ObjectHashMap;
+import com.flowpowered.commons.hashing.Int21TripleHashed;
 import com.flowpowered.math.vector.Vector3i;
 
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+
 import org.spoutcraft.client.universe.world.Chunk;
 import org.spoutcraft.client.universe.world.World;
 
 /**
- *
+ * An immutable view of a world, updated from the universe thread. Reads never lock: the chunk map is double buffered, chunks added or removed are put in the map not in use and it is then published
+ * as a whole. The chunk snapshots publish their own state, see {@link org.spoutcraft.client.universe.snapshot.ChunkSnapshot}. Updates must only be done from one thread at a time. For many lookups,
+ * acquire the map once, see {@link #acquireChunks()}.
  */
 public class WorldSnapshot {
-    private final TripleIntObjectMap<ChunkSnapshot> chunks = new TTripleInt21ObjectHashMap<>();
+    // The published chunk map
+    private volatile ChunkMap chunks = new ChunkMap(new TLongObjectHashMap<ChunkSnapshot>());
+    // Only accessed by the updating thread: the map published before the current one, and the changes made to the current one since, a null value being a removal
+    private ChunkMap retired = null;
+    private TLongObjectMap<ChunkSnapshot> retiredChanges = null;
     private final UUID id;
     private final String name;
-    private long time;
-    private long updateNumber = 0;
-    private final ReadWriteLock lock = new ReentrantReadWriteLock(true);
+    private volatile long time;
+    private volatile long updateNumber = 0;
 
     public WorldSnapshot(World world) {
         this.id = world.getID();
@@ -70,12 +75,11 @@ public class WorldSnapshot {
     }
 
     public boolean hasChunk(int x, int y, int z) {
-        final Lock lock = this.lock.readLock();
-        lock.lock();
+        final ChunkMap chunks = acquireChunks();
         try {
-            return chunks.containsKey(x, y, z);
+            return chunks.hasChunk(x, y, z);
         } finally {
-            lock.unlock();
+            chunks.release();
         }
     }
 
@@ -84,86 +88,129 @@ public class WorldSnapshot {
     }
 
     public ChunkSnapshot getChunk(int x, int y, int z) {
-        final Lock lock = this.lock.readLock();
-        lock.lock();
+        final ChunkMap chunks = acquireChunks();
         try {
-            return chunks.get(x, y, z);
+            return chunks.getChunk(x, y, z);
         } finally {
-            lock.unlock();
+            chunks.release();
         }
     }
 
     public Map<Vector3i, ChunkSnapshot> getChunks() {
-        final Lock lock = this.lock.readLock();
-        lock.lock();
+        final ChunkMap chunks = acquireChunks();
         try {
-            final Map<Vector3i, ChunkSnapshot> map = new HashMap<>(chunks.size());
-            for (ChunkSnapshot chunk : chunks.valueCollection()) {
+            final Map<Vector3i, ChunkSnapshot> map = new HashMap<>(chunks.map.size());
+            for (ChunkSnapshot chunk : chunks.map.valueCollection()) {
                 map.put(chunk.getPosition(), chunk);
             }
             return map;
         } finally {
-            lock.unlock();
+            chunks.release();
         }
     }
 
-    public long getTime() {
-        final Lock lock = this.lock.readLock();
-        lock.lock();
-        try {
-            return time;
-        } finally {
-            lock.unlock();
+    /**
+     * Acquires the current chunk map, for many lookups. The accessors of the snapshot acquire and release the map on each call, which costs two atomic operations on a counter shared by all the
+     * readers. Looking up chunks in the acquired map instead costs nothing more than the lookup. The map must be released once read, after which it must not be used anymore. Until then, the next
+     * update adding or removing chunks can't reuse it and copies it instead, so it shouldn't be held longer than needed.
+     *
+     * @return The current chunk map, to release when done
+     */
+    public ChunkMap acquireChunks() {
+        while (true) {
+            final ChunkMap chunks = this.chunks;
+            chunks.readers.incrementAndGet();
+            // If it was replaced in the meantime, it might be updated, so use the new one
+            if (chunks == this.chunks) {
+                return chunks;
+            }
+            chunks.readers.decrementAndGet();
         }
     }
 
+    public long getTime() {
+        return time;
+    }
+
     public long getUpdateNumber() {
-        final Lock lock = this.lock.readLock();
-        lock.lock();
-        try {
-            return updateNumber;
-        } finally {
-            lock.unlock();
-        }
+        return updateNumber;
     }
 
+    /**
+     * Updates the snapshot from the world's change log, so that only the chunks added, removed or modified since the last update are visited. If chunks were added or removed, the map published
+     * before the current one is brought up to date with the changes of the last update and those of this one, then published. If it's still being read, the current map is copied instead.
+     *
+     * @param current The world to update from, must have the same ID as the snapshot
+     * @see org.spoutcraft.client.universe.world.World#pollChunkChanges()
+     */
     public void update(World current) {
         if (!current.getID().equals(id)) {
             throw new IllegalArgumentException("Cannot update from a world with another ID");
         }
-        final Lock lock = this.lock.writeLock();
-        lock.lock();
-        try {
-            final Set<Vector3i> validChunks = new HashSet<>();
-            boolean changed = false;
-            for (Chunk chunk : current.getChunks().values()) {
-                final Vector3i position = chunk.getPosition();
-                ChunkSnapshot chunkSnapshot = chunks.get(position.getX(), position.getY(), position.getZ());
-                if (chunkSnapshot == null) {
-                    chunkSnapshot = new ChunkSnapshot(this, position);
-                    chunks.put(position.getX(), position.getY(), position.getZ(), chunkSnapshot);
-                }
-                if (chunkSnapshot.update(chunk)) {
+        final TLongSet changes = current.pollChunkChanges();
+        final ChunkMap published = this.chunks;
+        // The map to publish and the changes made to it, only prepared once a chunk is added or removed
+        ChunkMap next = null;
+        TLongObjectMap<ChunkSnapshot> nextChanges = null;
+        boolean changed = false;
+        for (TLongIterator iterator = changes.iterator(); iterator.hasNext(); ) {
+            final long key = iterator.next();
+            final Chunk chunk = current.getChunk(Int21TripleHashed.key1(key), Int21TripleHashed.key2(key), Int21TripleHashed.key3(key));
+            if (chunk == null) {
+                if (published.map.containsKey(key)) {
+                    if (next == null) {
+                        next = prepareNext(published);
+                        nextChanges = new TLongObjectHashMap<>();
+                    }
+                    next.map.remove(key);
+                    nextChanges.put(key, null);
                     changed = true;
                 }
-                validChunks.add(position);
+                continue;
             }
-            for (Iterator<ChunkSnapshot> iterator = chunks.valueCollection().iterator(); iterator.hasNext(); ) {
-                final Vector3i position = iterator.next().getPosition();
-                if (!validChunks.contains(position)) {
-                    iterator.remove();
-                    changed = true;
+            ChunkSnapshot chunkSnapshot = published.map.get(key);
+            if (chunkSnapshot == null) {
+                if (next == null) {
+                    next = prepareNext(published);
+                    nextChanges = new TLongObjectHashMap<>();
                 }
+                chunkSnapshot = new ChunkSnapshot(this, chunk.getPosition());
+                next.map.put(key, chunkSnapshot);
+                nextChanges.put(key, chunkSnapshot);
             }
-            time = current.getTime();
-            if (changed) {
-                updateNumber++;
+            if (chunkSnapshot.update(chunk)) {
+                changed = true;
             }
-        } finally {
-            lock.unlock();
+        }
+        if (next != null) {
+            this.chunks = next;
+            retired = published;
+            retiredChanges = nextChanges;
+        }
+        time = current.getTime();
+        if (changed) {
+            updateNumber++;
         }
     }
 
+    // Returns the map to apply the changes to, up to date with the published one
+    private ChunkMap prepareNext(ChunkMap published) {
+        // A reader acquiring the retired map after this check will see that it's not published, and retry with the current one
+        if (retired == null || retired.readers.get() != 0) {
+            return new ChunkMap(new TLongObjectHashMap<>(published.map));
+        }
+        final ChunkMap next = retired;
+        for (TLongObjectIterator<ChunkSnapshot> iterator = retiredChanges.iterator(); iterator.hasNext(); ) {
+            iterator.advance();
+            if (iterator.value() == null) {
+                next.map.remove(iterator.key());
+            } else {
+                next.map.put(iterator.key(), iterator.value());
+            }
+        }
+        return next;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -180,4 +227,37 @@ public class WorldSnapshot {
     public int hashCode() {
         return 17 * id.hashCode();
     }
+
+    /**
+     * A chunk map of the snapshot, as published by an update, acquired through {@link org.spoutcraft.client.universe.snapshot.WorldSnapshot#acquireChunks()}. It's only modified by the updates when
+     * neither published nor acquired.
+     */
+    public static final class ChunkMap {
+        // Keyed by packed position, see Int21TripleHashed
+        private final TLongObjectMap<ChunkSnapshot> map;
+        private final AtomicInteger readers = new AtomicInteger();
+
+        private ChunkMap(TLongObjectMap<ChunkSnapshot> map) {
+            this.map = map;
+        }
+
+        public boolean hasChunk(int x, int y, int z) {
+            return map.containsKey(Int21TripleHashed.key(x, y, z));
+        }
+
+        public ChunkSnapshot getChunk(Vector3i position) {
+            return getChunk(position.getX(), position.getY(), position.getZ());
+        }
+
+        public ChunkSnapshot getChunk(int x, int y, int z) {
+            return map.get(Int21TripleHashed.key(x, y, z));
+        }
+
+        /**
+         * Releases the map, which must not be read afterwards. Must be called exactly once per acquisition.
+         */
+        public void release() {
+            readers.decrementAndGet();
+        }
+    }
 }
@@ -107,6 +107,7 @@ public class Chunk {
 
     public void setMaterial(int x, int y, int z, Material material) {
         blocks.setBlock(x & BLOCKS.MASK, y & BLOCKS.MASK, z & BLOCKS.MASK, material.getID(), material.getSubID(), SUB_ID_MASK);
+        world.onChunkModified(this);
     }
 
     public short getBlockLight(Vector3i position) {
@@ -123,6 +124,7 @@ public class Chunk {
 
     public void setBlockLight(int x, int y, int z, short light) {
         blocks.setData(x, y, z, light, BLOCK_LIGHT_MASK);
+        world.onChunkModified(this);
     }
 
     public short getBlockSkyLight(Vector3i position) {
@@ -139,6 +141,7 @@ public class Chunk {
 
     public void setBlockSkyLight(int x, int y, int z, short light) {
         blocks.setData(x, y, z, light, BLOCK_SKY_LIGHT_MASK);
+        world.onChunkModified(this);
     }
 
     public AtomicBlockStore getBlocks() {
@@ -23,12 +23,23 @@
  */
 package org.spoutcraft.client.universe.world;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
+import com.flowpowered.commons.hashing.Int21TripleHashed;
+import com.flowpowered.math.vector.Vector2i;
 import com.flowpowered.math.vector.Vector3i;
 
+import gnu.trove.TCollections;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
 import org.spoutcraft.client.game.Difficulty;
 import org.spoutcraft.client.game.Dimension;
 import org.spoutcraft.client.game.GameMode;
@@ -46,8 +57,19 @@ public class World {
      * The duration of a day in the game, in real life, in milliseconds.
      */
     public static final long GAME_DAY_IRL = 1000 * 60;
-    //Storage
-    private final Map<Vector3i, Chunk> chunks = new ConcurrentHashMap<>();
+    /**
+     * The number of chunks in a column, chunk y coordinates range from 0 (inclusive) to this value (exclusive).
+     */
+    public static final int CHUNK_COLUMN_HEIGHT = 16;
+    private static final TLongSet NO_CHUNK_CHANGES = TCollections.unmodifiableSet(new TLongHashSet(0));
+    //Storage, slots of the chunk columns keyed by their packed x and z coordinates. The map is never modified once published, adding or removing a slot publishes a copy. Columns are
+    // immutable and replaced in their slot on write, so reads never lock
+    private volatile TLongObjectMap<ColumnSlot> columns = new TLongObjectHashMap<>();
+    // Serializes the writes, which read the column before replacing it
+    private final Object writeLock = new Object();
+    // Change log, the packed positions (see Int21TripleHashed) of the chunks added, removed or modified since the last poll
+    private TLongSet chunkChanges = new TLongHashSet();
+    private final Object chunkChangesLock = new Object();
     private final UUID id;
     private final String name;
     // Characteristics
@@ -96,31 +118,72 @@ public class World {
     }
 
     public boolean hasChunk(int x, int y, int z) {
-        return hasChunk(new Vector3i(x, y, z));
+        return getChunk(x, y, z) != null;
     }
 
     public boolean hasChunk(Vector3i position) {
-        return chunks.containsKey(position);
+        return hasChunk(position.getX(), position.getY(), position.getZ());
     }
 
     public Chunk getChunk(int x, int y, int z) {
-        return getChunk(new Vector3i(x, y, z));
+        if (y < 0 || y >= CHUNK_COLUMN_HEIGHT) {
+            return null;
+        }
+        final ChunkColumn column = getColumn(columnKey(x, z));
+        return column != null ? column.chunks[y] : null;
     }
 
     public Chunk getChunk(Vector3i position) {
-        return chunks.get(position);
+        return getChunk(position.getX(), position.getY(), position.getZ());
     }
 
+    /**
+     * Sets the chunk at its position, replacing any previous one. The chunk y coordinate must be in the column bounds.
+     *
+     * @param chunk The chunk to set
+     * @return The previous chunk at the position, or null if there was none
+     * @throws IllegalArgumentException If the chunk y coordinate is out of the column bounds
+     */
     public Chunk setChunk(Chunk chunk) {
-        return chunks.put(chunk.getPosition(), chunk);
+        checkColumnBounds(chunk);
+        synchronized (writeLock) {
+            final long key = columnKey(chunk.getX(), chunk.getZ());
+            final ChunkColumn column = getColumn(key);
+            final Chunk previous;
+            if (column == null) {
+                previous = null;
+                replaceColumn(key, ChunkColumn.EMPTY.with(chunk));
+            } else {
+                previous = column.chunks[chunk.getY()];
+                replaceColumn(key, column.with(chunk));
+            }
+            // Logged once published, so the change is visible to the consumer of the log
+            logChunkChange(chunk.getX(), chunk.getY(), chunk.getZ());
+            return previous;
+        }
     }
 
     public Chunk removeChunk(int x, int y, int z) {
-        return removeChunk(new Vector3i(x, y, z));
+        if (y < 0 || y >= CHUNK_COLUMN_HEIGHT) {
+            return null;
+        }
+        synchronized (writeLock) {
+            final long key = columnKey(x, z);
+            final ChunkColumn column = getColumn(key);
+            if (column == null) {
+                return null;
+            }
+            final Chunk chunk = column.chunks[y];
+            if (chunk != null) {
+                replaceColumn(key, column.without(y, y + 1));
+                logChunkChange(x, y, z);
+            }
+            return chunk;
+        }
     }
 
     public Chunk removeChunk(Vector3i position) {
-        return chunks.remove(position);
+        return removeChunk(position.getX(), position.getY(), position.getZ());
     }
 
     /**
@@ -130,15 +193,180 @@ public class World {
      * @param columnZ The z-axis chunk coordinate of the column
      */
     public void removeChunkColumn(int columnX, int columnZ, int startY, int endY) {
-        for (; startY < endY; startY++) {
-            removeChunk(columnX, startY, columnZ);
+        if (startY <= 0 && endY >= CHUNK_COLUMN_HEIGHT) {
+            removeChunkColumn(columnX, columnZ);
+            return;
+        }
+        synchronized (writeLock) {
+            final long key = columnKey(columnX, columnZ);
+            final ChunkColumn column = getColumn(key);
+            if (column == null) {
+                return;
+            }
+            final ChunkColumn remaining = column.without(Math.max(startY, 0), Math.min(endY, CHUNK_COLUMN_HEIGHT));
+            replaceColumn(key, remaining);
+            logColumnChanges(columnX, columnZ, column.mask & ~remaining.mask);
+        }
+    }
+
+    /**
+     * Removes an entire column of {@link org.spoutcraft.client.universe.world.Chunk} from the world.
+     *
+     * @param columnX The x-axis chunk coordinate of the column
+     * @param columnZ The z-axis chunk coordinate of the column
+     */
+    public void removeChunkColumn(int columnX, int columnZ) {
+        synchronized (writeLock) {
+            final long key = columnKey(columnX, columnZ);
+            final ChunkColumn column = getColumn(key);
+            if (column != null) {
+                replaceColumn(key, ChunkColumn.EMPTY);
+                logColumnChanges(columnX, columnZ, column.mask);
+            }
         }
     }
 
+    /**
+     * Replaces an entire column of {@link org.spoutcraft.client.universe.world.Chunk} in the world. Chunks of the previous column that aren't replaced are removed. The chunks must all have the
+     * column coordinates and y coordinates in the column bounds.
+     *
+     * @param columnX The x-axis chunk coordinate of the column
+     * @param columnZ The z-axis chunk coordinate of the column
+     * @param chunks The chunks of the new column
+     * @throws IllegalArgumentException If a chunk isn't in the column
+     */
+    public void setChunkColumn(int columnX, int columnZ, Collection<Chunk> chunks) {
+        ChunkColumn column = ChunkColumn.EMPTY;
+        for (Chunk chunk : chunks) {
+            if (chunk.getX() != columnX || chunk.getZ() != columnZ) {
+                throw new IllegalArgumentException("Chunk at " + chunk.getPosition() + " isn't in column (" + columnX + ", " + columnZ + ")");
+            }
+            checkColumnBounds(chunk);
+            column = column.with(chunk);
+        }
+        synchronized (writeLock) {
+            final long key = columnKey(columnX, columnZ);
+            final ChunkColumn previous = getColumn(key);
+            replaceColumn(key, column);
+            logColumnChanges(columnX, columnZ, previous != null ? previous.mask | column.mask : column.mask);
+        }
+    }
+
+    /**
+     * Returns true if the column has at least one chunk.
+     *
+     * @param columnX The x-axis chunk coordinate of the column
+     * @param columnZ The z-axis chunk coordinate of the column
+     * @return Whether or not the column is loaded
+     */
+    public boolean hasChunkColumn(int columnX, int columnZ) {
+        return getChunkColumnMask(columnX, columnZ) != 0;
+    }
+
+    /**
+     * Returns the bit mask of the chunks present in the column, bit i being set if the chunk at y coordinate i is present.
+     *
+     * @param columnX The x-axis chunk coordinate of the column
+     * @param columnZ The z-axis chunk coordinate of the column
+     * @return The bit mask of the present chunks, 0 if the column isn't loaded
+     */
+    public int getChunkColumnMask(int columnX, int columnZ) {
+        final ChunkColumn column = getColumn(columnKey(columnX, columnZ));
+        return column != null ? column.mask : 0;
+    }
+
+    /**
+     * Returns a copy of the chunks in the column, indexed by their y coordinate. Absent chunks are null.
+     *
+     * @param columnX The x-axis chunk coordinate of the column
+     * @param columnZ The z-axis chunk coordinate of the column
+     * @return The chunks of the column, or null if the column isn't loaded
+     */
+    public Chunk[] getChunkColumn(int columnX, int columnZ) {
+        final ChunkColumn column = getColumn(columnKey(columnX, columnZ));
+        return column != null ? column.chunks.clone() : null;
+    }
+
+    /**
+     * Returns the x and z chunk coordinates of all the loaded columns.
+     *
+     * @return The loaded columns
+     */
+    public List<Vector2i> getChunkColumns() {
+        final long[] keys = columns.keys();
+        final List<Vector2i> loaded = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            loaded.add(new Vector2i((int) (key >> 32), (int) key));
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns a copy of the chunks, by position. Kept for compatibility, prefer the coordinate based methods or {@link #getChunkValues()} to avoid building the map.
+     *
+     * @return The chunks, by position
+     */
     public Map<Vector3i, Chunk> getChunks() {
+        final Map<Vector3i, Chunk> map = new HashMap<>();
+        for (Chunk chunk : getChunkValues()) {
+            map.put(chunk.getPosition(), chunk);
+        }
+        return map;
+    }
+
+    /**
+     * Returns a copy of the chunks.
+     *
+     * @return The chunks
+     */
+    public Collection<Chunk> getChunkValues() {
+        final TLongObjectMap<ColumnSlot> columns = this.columns;
+        final List<Chunk> chunks = new ArrayList<>(columns.size() * CHUNK_COLUMN_HEIGHT);
+        for (ColumnSlot slot : columns.valueCollection()) {
+            final ChunkColumn column = slot.column;
+            for (int mask = column.mask; mask != 0; mask &= mask - 1) {
+                chunks.add(column.chunks[Integer.numberOfTrailingZeros(mask)]);
+            }
+        }
         return chunks;
     }
 
+    /**
+     * Returns the packed positions (see {@link com.flowpowered.commons.hashing.Int21TripleHashed}) of the chunks added, removed or modified since the last poll, and clears the change log. A chunk
+     * appears once no matter how many times it changed. Modifications are only logged when made through the {@link org.spoutcraft.client.universe.world.Chunk} setters. The log has a single
+     * consumer, the world's snapshot.
+     *
+     * @return The positions of the changed chunks, empty if none changed
+     */
+    public TLongSet pollChunkChanges() {
+        synchronized (chunkChangesLock) {
+            if (chunkChanges.isEmpty()) {
+                return NO_CHUNK_CHANGES;
+            }
+            final TLongSet changes = chunkChanges;
+            chunkChanges = new TLongHashSet();
+            return changes;
+        }
+    }
+
+    void onChunkModified(Chunk chunk) {
+        logChunkChange(chunk.getX(), chunk.getY(), chunk.getZ());
+    }
+
+    private void logChunkChange(int x, int y, int z) {
+        synchronized (chunkChangesLock) {
+            chunkChanges.add(Int21TripleHashed.key(x, y, z));
+        }
+    }
+
+    private void logColumnChanges(int columnX, int columnZ, int mask) {
+        synchronized (chunkChangesLock) {
+            for (; mask != 0; mask &= mask - 1) {
+                chunkChanges.add(Int21TripleHashed.key(columnX, Integer.numberOfTrailingZeros(mask), columnZ));
+            }
+        }
+    }
+
     public GameMode getGameMode() {
         return gameMode;
     }
@@ -195,4 +423,75 @@ public class World {
     public int hashCode() {
         return id.hashCode();
     }
+
+    private ChunkColumn getColumn(long key) {
+        final ColumnSlot slot = columns.get(key);
+        return slot != null ? slot.column : null;
+    }
+
+    // Must be called with the write lock held. Only copies the map when the column is added or emptied
+    private void replaceColumn(long key, ChunkColumn column) {
+        final ColumnSlot slot = columns.get(key);
+        if (column.mask == 0) {
+            if (slot != null) {
+                final TLongObjectMap<ColumnSlot> copy = new TLongObjectHashMap<>(columns);
+                copy.remove(key);
+                columns = copy;
+            }
+        } else if (slot != null) {
+            slot.column = column;
+        } else {
+            final TLongObjectMap<ColumnSlot> copy = new TLongObjectHashMap<>(columns);
+            copy.put(key, new ColumnSlot(column));
+            columns = copy;
+        }
+    }
+
+    private static long columnKey(int x, int z) {
+        return (long) x << 32 | z & 0xFFFFFFFFL;
+    }
+
+    private static void checkColumnBounds(Chunk chunk) {
+        if (chunk.getY() < 0 || chunk.getY() >= CHUNK_COLUMN_HEIGHT) {
+            throw new IllegalArgumentException("Chunk y coordinate is out of the column bounds: " + chunk.getY());
+        }
+    }
+
+    // The current column at a position of the map, replaced in place so the map is only copied when columns are added or removed
+    private static class ColumnSlot {
+        private volatile ChunkColumn column;
+
+        private ColumnSlot(ChunkColumn column) {
+            this.column = column;
+        }
+    }
+
+    // The chunks of a column, indexed by y coordinate, and the bit mask of the present ones. Never modified once created, changes make a new column
+    private static class ChunkColumn {
+        private static final ChunkColumn EMPTY = new ChunkColumn(new Chunk[CHUNK_COLUMN_HEIGHT], 0);
+        private final Chunk[] chunks;
+        private final int mask;
+
+        private ChunkColumn(Chunk[] chunks, int mask) {
+            this.chunks = chunks;
+            this.mask = mask;
+        }
+
+        private ChunkColumn with(Chunk chunk) {
+            final int y = chunk.getY();
+            final Chunk[] chunks = this.chunks.clone();
+            chunks[y] = chunk;
+            return new ChunkColumn(chunks, mask | 1 << y);
+        }
+
+        private ChunkColumn without(int startY, int endY) {
+            final Chunk[] chunks = this.chunks.clone();
+            int mask = this.mask;
+            for (int y = startY; y < endY; y++) {
+                chunks[y] = null;
+                mask &= ~(1 << y);
+            }
+            return new ChunkColumn(chunks, mask);
+        }
+    }
 }
@@ -0,0 +1,132 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.culling;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spoutcraft.client.nterface.mesh.ChunkSnapshotGroup;
+import org.spoutcraft.client.universe.block.BlockFace;
+import org.spoutcraft.client.universe.block.material.Material;
+import org.spoutcraft.client.universe.block.material.MaterialTable;
+import org.spoutcraft.client.universe.block.material.Materials;
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ * Tests the chunks reached through the visibility graph by the {@link org.spoutcraft.client.nterface.culling.ChunkOcclusionCuller}.
+ */
+public class ChunkOcclusionCullerTest {
+    @Test
+    public void testConnectivity() {
+        final MaterialTable table = Material.getTable();
+        final int air = table.getIndex(Materials.AIR.getID(), Materials.AIR.getSubID());
+        final int solid = table.getIndex(Materials.SOLID.getID(), Materials.SOLID.getSubID());
+        final int[] materials = new int[ChunkSnapshotGroup.PADDED_VOLUME];
+        final ChunkConnectivity connectivity = new ChunkConnectivity();
+        Arrays.fill(materials, air);
+        Assert.assertEquals(ChunkConnectivity.ALL, connectivity.compute(materials, table));
+        Arrays.fill(materials, solid);
+        Assert.assertEquals(ChunkConnectivity.NONE, connectivity.compute(materials, table));
+        // A tunnel along the x axis, and an enclosed cave which doesn't count
+        for (int x = 0; x < Chunk.BLOCKS.SIZE; x++) {
+            materials[ChunkSnapshotGroup.getPaddedIndex(x, 8, 8)] = air;
+        }
+        materials[ChunkSnapshotGroup.getPaddedIndex(2, 2, 2)] = air;
+        final long tunnel = connectivity.compute(materials, table);
+        Assert.assertTrue(ChunkConnectivity.isConnected(tunnel, BlockFace.NORTH, BlockFace.SOUTH));
+        Assert.assertTrue(ChunkConnectivity.isConnected(tunnel, BlockFace.SOUTH, BlockFace.NORTH));
+        Assert.assertFalse(ChunkConnectivity.isConnected(tunnel, BlockFace.NORTH, BlockFace.TOP));
+        Assert.assertFalse(ChunkConnectivity.isConnected(tunnel, BlockFace.EAST, BlockFace.WEST));
+        Assert.assertEquals(ChunkConnectivity.getConnectivity(1 << BlockFace.NORTH.ordinal() | 1 << BlockFace.SOUTH.ordinal()), tunnel);
+    }
+
+    @Test
+    public void testWall() {
+        final ChunkOcclusionCuller culler = new ChunkOcclusionCuller();
+        final Vector3i camera = new Vector3i(1, 1, 1);
+        // A solid wall of chunks hides everything behind it
+        final WallGraph graph = new WallGraph();
+        final Set<Vector3i> reached = new HashSet<>();
+        culler.cull(camera, graph, reached);
+        Assert.assertTrue(reached.contains(new Vector3i(3, 2, 5)));
+        Assert.assertTrue(reached.contains(new Vector3i(4, 0, 7)));
+        for (Vector3i position : reached) {
+            Assert.assertTrue(position + " is behind the wall", position.getX() <= 4);
+        }
+        // A tunnel through the wall makes the chunks behind it visible
+        graph.tunnel = new Vector3i(4, 1, 1);
+        reached.clear();
+        culler.cull(camera, graph, reached);
+        Assert.assertTrue(reached.contains(new Vector3i(5, 1, 1)));
+        Assert.assertTrue(reached.contains(new Vector3i(7, 3, 7)));
+    }
+
+    @Test
+    public void testCave() {
+        final ChunkOcclusionCuller culler = new ChunkOcclusionCuller();
+        // From inside a closed chunk, only the direct neighbours can be seen
+        final Set<Vector3i> reached = new HashSet<>();
+        culler.cull(new Vector3i(2, 2, 2), new ChunkGraphAdapter() {
+            @Override
+            public long getConnectivity(Vector3i position) {
+                return ChunkConnectivity.NONE;
+            }
+        }, reached);
+        Assert.assertEquals(7, reached.size());
+    }
+
+    // A world of 8 by 4 by 8 empty chunks, with a solid wall at x = 4
+    private static class WallGraph extends ChunkGraphAdapter {
+        private Vector3i tunnel;
+
+        @Override
+        public long getConnectivity(Vector3i position) {
+            if (position.getX() != 4) {
+                return ChunkConnectivity.ALL;
+            }
+            if (position.equals(tunnel)) {
+                return ChunkConnectivity.getConnectivity(1 << BlockFace.NORTH.ordinal() | 1 << BlockFace.SOUTH.ordinal());
+            }
+            return ChunkConnectivity.NONE;
+        }
+    }
+
+    private static class ChunkGraphAdapter implements ChunkOcclusionCuller.ChunkGraph {
+        @Override
+        public boolean isVisible(Vector3i position) {
+            return position.getX() >= 0 && position.getX() < 8 && position.getY() >= 0 && position.getY() < 4 && position.getZ() >= 0 && position.getZ() < 8;
+        }
+
+        @Override
+        public long getConnectivity(Vector3i position) {
+            return ChunkConnectivity.ALL;
+        }
+    }
+}
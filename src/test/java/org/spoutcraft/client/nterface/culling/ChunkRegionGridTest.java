@@ -0,0 +1,101 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.culling;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.flowpowered.commons.ViewFrustum;
+import com.flowpowered.math.vector.Vector3f;
+import com.flowpowered.math.vector.Vector3i;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the frustum culling of the regions of the {@link org.spoutcraft.client.nterface.culling.ChunkRegionGrid}.
+ */
+public class ChunkRegionGridTest {
+    @Test
+    public void testVisible() {
+        final ChunkRegionGrid<Vector3i> grid = new ChunkRegionGrid<>();
+        // Three regions along the x axis
+        for (int x = 0; x < 12; x++) {
+            grid.put(new Vector3i(x, 0, 0), new Vector3i(x, 0, 0));
+        }
+        Assert.assertEquals(12, grid.size());
+        Assert.assertEquals(3, grid.getRegionCount());
+        // Covers the first region and half of the second one
+        final BoxFrustum frustum = new BoxFrustum(new Vector3f(0, 0, 0), new Vector3f(96, 64, 64));
+        final Set<Vector3i> visible = new HashSet<>();
+        grid.getVisible(frustum, visible);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(new Vector3i(0, 0, 0), new Vector3i(1, 0, 0), new Vector3i(2, 0, 0), new Vector3i(3, 0, 0),
+                new Vector3i(4, 0, 0), new Vector3i(5, 0, 0))), visible);
+        // Only the chunks of the partially visible region are tested individually
+        Assert.assertEquals(4, frustum.chunkTests);
+        grid.remove(new Vector3i(8, 0, 0));
+        grid.remove(new Vector3i(9, 0, 0));
+        grid.remove(new Vector3i(10, 0, 0));
+        grid.remove(new Vector3i(11, 0, 0));
+        Assert.assertEquals(2, grid.getRegionCount());
+    }
+
+    // An axis aligned box instead of an actual frustum, which is enough for the region logic
+    private static class BoxFrustum extends ViewFrustum {
+        private final Vector3f min;
+        private final Vector3f max;
+        private int chunkTests = 0;
+
+        private BoxFrustum(Vector3f min, Vector3f max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public boolean contains(float x, float y, float z) {
+            return x >= min.getX() && x <= max.getX() && y >= min.getY() && y <= max.getY() && z >= min.getZ() && z <= max.getZ();
+        }
+
+        @Override
+        public boolean intersectsCuboid(Vector3f[] vertices, Vector3f position) {
+            return intersectsCuboid(vertices, position.getX(), position.getY(), position.getZ());
+        }
+
+        @Override
+        public boolean intersectsCuboid(Vector3f[] vertices, float x, float y, float z) {
+            Vector3f low = vertices[0];
+            Vector3f high = vertices[0];
+            for (Vector3f vertex : vertices) {
+                low = low.min(vertex);
+                high = high.max(vertex);
+            }
+            if (high.getX() - low.getX() == 16) {
+                chunkTests++;
+            }
+            return x + low.getX() < max.getX() && x + high.getX() > min.getX() && y + low.getY() < max.getY() && y + high.getY() > min.getY()
+                    && z + low.getZ() < max.getZ() && z + high.getZ() > min.getZ();
+        }
+    }
+}
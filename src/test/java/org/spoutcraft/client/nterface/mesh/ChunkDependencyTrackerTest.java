@@ -0,0 +1,83 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spoutcraft.client.universe.block.material.Materials;
+import org.spoutcraft.client.universe.snapshot.WorldSnapshot;
+import org.spoutcraft.client.universe.world.Chunk;
+import org.spoutcraft.client.universe.world.World;
+
+/**
+ * Tests the neighbour changes found by the {@link org.spoutcraft.client.nterface.mesh.ChunkDependencyTracker}.
+ */
+public class ChunkDependencyTrackerTest {
+    @Test
+    public void testNeighbourChanges() {
+        final World world = new World("test");
+        final Vector3i first = new Vector3i(0, 0, 0);
+        final Vector3i second = new Vector3i(1, 0, 0);
+        final Chunk chunk = new Chunk(world, first);
+        world.setChunk(chunk);
+        world.setChunk(new Chunk(world, second));
+        final WorldSnapshot snapshot = new WorldSnapshot(world);
+        final ChunkDependencyTracker tracker = new ChunkDependencyTracker();
+        // Both chunks appear next to each other
+        snapshot.update(world);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(first, second)), tracker.update(snapshot.getChunks()));
+        // Nothing changed
+        snapshot.update(world);
+        Assert.assertEquals(Collections.emptySet(), tracker.update(snapshot.getChunks()));
+        // A change inside the chunk doesn't affect the neighbour
+        chunk.setMaterial(5, 5, 5, Materials.SOLID);
+        snapshot.update(world);
+        Assert.assertEquals(Collections.emptySet(), tracker.update(snapshot.getChunks()));
+        // A change on the opposite face doesn't either
+        chunk.setMaterial(0, 5, 5, Materials.SOLID);
+        snapshot.update(world);
+        Assert.assertEquals(Collections.emptySet(), tracker.update(snapshot.getChunks()));
+        // But one on the shared face does
+        chunk.setMaterial(15, 5, 5, Materials.SOLID);
+        snapshot.update(world);
+        Assert.assertEquals(Collections.singleton(second), tracker.update(snapshot.getChunks()));
+        // Changes spanning more than one update are unknown
+        chunk.setMaterial(6, 6, 6, Materials.SOLID);
+        snapshot.update(world);
+        chunk.setMaterial(7, 7, 7, Materials.SOLID);
+        snapshot.update(world);
+        Assert.assertEquals(Collections.singleton(second), tracker.update(snapshot.getChunks()));
+        // The neighbour disappears
+        world.removeChunk(second);
+        snapshot.update(world);
+        Assert.assertEquals(Collections.singleton(first), tracker.update(snapshot.getChunks()));
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import gnu.trove.list.TIntList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spoutcraft.client.nterface.mesh.MeshTestSupport.BlockGenerator;
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ * Tests the downsampling of the chunks to the lower levels of detail by the {@link org.spoutcraft.client.nterface.mesh.ChunkMeshBuffers}.
+ */
+public class ChunkMeshBuffersTest {
+    @Test
+    public void testDetailLevels() {
+        final BlockGenerator terrain = new BlockGenerator() {
+            @Override
+            public boolean isSolid(int x, int y, int z) {
+                return y < 20 + (x * 7 + z * 3) % 5;
+            }
+        };
+        int lastVertexCount = Integer.MAX_VALUE;
+        for (int level = 0; level <= 2; level++) {
+            final ChunkSnapshotGroup group = MeshTestSupport.createGroup(terrain, level);
+            final ChunkMeshBuffers buffers = new ChunkMeshBuffers();
+            new StandardChunkMesher().mesh(group, buffers);
+            Assert.assertEquals(Chunk.BLOCKS.SIZE >> level, buffers.getSize());
+            final int vertexCount = buffers.getMesh().getVertexCount();
+            Assert.assertTrue("Level " + level + " doesn't have fewer vertices: " + vertexCount + " >= " + lastVertexCount, vertexCount < lastVertexCount);
+            lastVertexCount = vertexCount;
+        }
+        // Flat ground half way up the bottom cells of level 3, which are solid, so the sides have to be closed to hide the seam with the lower full resolution neighbours
+        final BlockGenerator flat = new BlockGenerator() {
+            @Override
+            public boolean isSolid(int x, int y, int z) {
+                return y < 20;
+            }
+        };
+        Assert.assertEquals(0, countQuadsOnSide(MeshTestSupport.mesh(new StandardChunkMesher(), MeshTestSupport.createGroup(flat, 0))));
+        Assert.assertTrue(countQuadsOnSide(MeshTestSupport.mesh(new StandardChunkMesher(), MeshTestSupport.createGroup(flat, 3))) > 0);
+    }
+
+    // Counts the quads on the x = 0 side of the chunk
+    private static int countQuadsOnSide(PackedChunkMesh mesh) {
+        final TIntList indices = mesh.getIndices();
+        int count = 0;
+        for (int i = 0; i < indices.size(); i += 6) {
+            boolean onSide = true;
+            for (int j = 0; j < 6; j++) {
+                onSide &= mesh.getPosition(indices.get(i + j)).getX() == 0;
+            }
+            if (onSide) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+
+import com.flowpowered.math.imaginary.Quaternionf;
+import com.flowpowered.math.vector.Vector3f;
+import com.flowpowered.math.vector.Vector3i;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the order in which the {@link org.spoutcraft.client.nterface.mesh.ChunkMeshScheduler} runs the pending chunks, and the superseding of their tasks.
+ */
+public class ChunkMeshSchedulerTest {
+    private final List<String> ran = new ArrayList<>();
+
+    @Test
+    public void testOrdering() {
+        final ChunkMeshScheduler scheduler = new ChunkMeshScheduler(null);
+        Assert.assertTrue(scheduler.schedule(new Vector3i(10, 0, 0), newTask("far")));
+        Assert.assertTrue(scheduler.schedule(new Vector3i(0, 0, 0), newTask("near")));
+        Assert.assertTrue(scheduler.schedule(new Vector3i(0, 0, 5), newTask("middle")));
+        Assert.assertEquals(3, scheduler.size());
+        runAll(scheduler);
+        Assert.assertEquals(Arrays.asList("near", "middle", "far"), ran);
+    }
+
+    @Test
+    public void testReprioritize() {
+        final ChunkMeshScheduler scheduler = new ChunkMeshScheduler(null);
+        scheduler.schedule(new Vector3i(0, 0, 0), newTask("origin"));
+        scheduler.schedule(new Vector3i(0, 0, 20), newTask("away"));
+        // Move the camera next to the second chunk
+        scheduler.reprioritize(new Vector3f(8, 8, 20 * 16 + 8), Quaternionf.IDENTITY);
+        runAll(scheduler);
+        Assert.assertEquals(Arrays.asList("away", "origin"), ran);
+    }
+
+    @Test
+    public void testSupersede() {
+        final ChunkMeshScheduler scheduler = new ChunkMeshScheduler(null);
+        final RunnableFuture<?> old = newTask("old");
+        Assert.assertTrue(scheduler.schedule(new Vector3i(0, 0, 0), old));
+        Assert.assertTrue(scheduler.schedule(new Vector3i(1, 0, 0), newTask("other")));
+        // Replaces the pending task, so it doesn't need a new run
+        Assert.assertFalse(scheduler.schedule(new Vector3i(0, 0, 0), newTask("latest")));
+        Assert.assertTrue(old.isCancelled());
+        Assert.assertEquals(2, scheduler.size());
+        runAll(scheduler);
+        Assert.assertEquals(Arrays.asList("latest", "other"), ran);
+    }
+
+    @Test
+    public void testSupersedeRunning() {
+        final ChunkMeshScheduler scheduler = new ChunkMeshScheduler(null);
+        final Vector3i position = new Vector3i(0, 0, 0);
+        final RunnableFuture<?> latest = newTask("latest");
+        final RunnableFuture<?>[] running = new RunnableFuture<?>[1];
+        running[0] = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+                ran.add("running");
+                // A new version arrives while meshing, the running task is now stale
+                Assert.assertTrue(scheduler.schedule(position, latest));
+                Assert.assertTrue(running[0].isCancelled());
+                // The new task must wait for the running one to be done
+                Assert.assertFalse(scheduler.runNext());
+                Assert.assertEquals(1, scheduler.size());
+            }
+        }, null);
+        scheduler.schedule(position, running[0]);
+        // The running task is done, and the new one is now runnable
+        Assert.assertTrue(scheduler.runNext());
+        Assert.assertFalse(scheduler.runNext());
+        Assert.assertEquals(Arrays.asList("running", "latest"), ran);
+        Assert.assertEquals(0, scheduler.size());
+    }
+
+    private void runAll(ChunkMeshScheduler scheduler) {
+        while (scheduler.size() > 0) {
+            scheduler.runNext();
+        }
+    }
+
+    private RunnableFuture<?> newTask(final String name) {
+        return new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+                ran.add(name);
+            }
+        }, null);
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.spoutcraft.client.nterface.mesh.MeshTestSupport.BlockGenerator;
+
+/**
+ * Compares the {@link org.spoutcraft.client.nterface.mesh.StandardChunkMesher} and the {@link org.spoutcraft.client.nterface.mesh.GreedyChunkMesher}, reporting the vertices per chunk and the
+ * meshing time, for hilly terrain and for random blocks. Also reports the bytes allocated per chunk when the buffers are reused, as done by the {@link
+ * org.spoutcraft.client.nterface.mesh.ParallelChunkMesher}, and when new ones are created for each chunk. The vertex data is built each time, as the final output. Allocation measurement requires a
+ * HotSpot JVM. Run the main method, the first rounds are warm up.
+ */
+public class ChunkMesherBenchmark {
+    private static final int ROUNDS = 10;
+    private static final int MESHES_PER_ROUND = 500;
+
+    public static void main(String[] args) {
+        final Random random = new Random(42);
+        final ChunkSnapshotGroup terrain = createGroup(random, false);
+        final ChunkSnapshotGroup noise = createGroup(random, true);
+        final ChunkMesher[] meshers = {new StandardChunkMesher(), new GreedyChunkMesher()};
+        for (int round = 0; round < ROUNDS; round++) {
+            for (ChunkMesher mesher : meshers) {
+                run("terrain", mesher, terrain, round);
+                run("random", mesher, noise, round);
+            }
+        }
+    }
+
+    private static void run(String name, ChunkMesher mesher, ChunkSnapshotGroup group, int round) {
+        final ChunkMeshBuffers reused = new ChunkMeshBuffers();
+        long allocated = getAllocatedBytes();
+        final long start = System.nanoTime();
+        for (int i = 0; i < MESHES_PER_ROUND; i++) {
+            mesher.mesh(group, reused);
+            reused.getMesh().build();
+        }
+        final double micros = (System.nanoTime() - start) / 1e3 / MESHES_PER_ROUND;
+        final long reusedAllocated = (getAllocatedBytes() - allocated) / MESHES_PER_ROUND;
+        allocated = getAllocatedBytes();
+        for (int i = 0; i < MESHES_PER_ROUND; i++) {
+            final ChunkMeshBuffers fresh = new ChunkMeshBuffers();
+            mesher.mesh(group, fresh);
+            fresh.getMesh().build();
+        }
+        final long freshAllocated = (getAllocatedBytes() - allocated) / MESHES_PER_ROUND;
+        final int vertices = reused.getMesh().getVertexCount();
+        System.out.printf("Round %d, %s, %s: %d vertices (%d bytes) per chunk, %.1f us per chunk, %d bytes allocated per chunk with reused buffers, %d with new buffers%n", round,
+                mesher.getClass().getSimpleName(), name, vertices, vertices * PackedChunkMesh.VERTEX_SIZE, micros, reusedAllocated, freshAllocated);
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // Creates the group for the chunk at (0, 1, 0) and its neighbours, filled with either hills or random blocks
+    private static ChunkSnapshotGroup createGroup(final Random random, final boolean noise) {
+        return MeshTestSupport.createGroup(new BlockGenerator() {
+            @Override
+            public boolean isSolid(int x, int y, int z) {
+                return noise ? random.nextInt(3) == 0 : y < 24 + 6 * Math.sin(x / 7.0) * Math.cos(z / 9.0);
+            }
+        });
+    }
+}
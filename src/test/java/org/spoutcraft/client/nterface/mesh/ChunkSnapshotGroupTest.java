@@ -0,0 +1,66 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spoutcraft.client.nterface.mesh.MeshTestSupport.BlockGenerator;
+import org.spoutcraft.client.universe.block.material.Material;
+
+/**
+ * Tests the detection of the chunks with nothing to mesh by the {@link org.spoutcraft.client.nterface.mesh.ChunkSnapshotGroup}.
+ */
+public class ChunkSnapshotGroupTest {
+    @Test
+    public void testHiddenChunks() {
+        // Solid and enclosed by solid neighbours
+        final ChunkSnapshotGroup enclosed = MeshTestSupport.createGroup(new BlockGenerator() {
+            @Override
+            public boolean isSolid(int x, int y, int z) {
+                return y < 48;
+            }
+        }, 0);
+        Assert.assertTrue(enclosed.isHidden(Material.getTable()));
+        Assert.assertTrue(MeshTestSupport.mesh(new StandardChunkMesher(), enclosed).isEmpty());
+        Assert.assertTrue(MeshTestSupport.mesh(new GreedyChunkMesher(), enclosed).isEmpty());
+        // Air surrounded by air
+        final ChunkSnapshotGroup empty = MeshTestSupport.createGroup(new BlockGenerator() {
+            @Override
+            public boolean isSolid(int x, int y, int z) {
+                return false;
+            }
+        }, 0);
+        Assert.assertTrue(empty.isHidden(Material.getTable()));
+        // Air above solid ground, the top faces of the ground are meshed by the chunk above too
+        final ChunkSnapshotGroup above = MeshTestSupport.createGroup(new BlockGenerator() {
+            @Override
+            public boolean isSolid(int x, int y, int z) {
+                return y < 16;
+            }
+        }, 0);
+        Assert.assertFalse(above.isHidden(Material.getTable()));
+        Assert.assertFalse(MeshTestSupport.mesh(new StandardChunkMesher(), above).isEmpty());
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import com.flowpowered.math.vector.Vector3f;
+import com.flowpowered.math.vector.Vector3i;
+
+import gnu.trove.list.TIntList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spoutcraft.client.nterface.mesh.MeshTestSupport.BlockGenerator;
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ *
+ */
+public class GreedyChunkMesherTest {
+    @Test
+    public void testRandomCoverage() {
+        final Random random = new Random(12345);
+        final ChunkSnapshotGroup group = MeshTestSupport.createGroup(new BlockGenerator() {
+            @Override
+            public boolean isSolid(int x, int y, int z) {
+                return random.nextInt(3) == 0;
+            }
+        });
+        assertSameCoverage(group);
+    }
+
+    @Test
+    public void testTerrainCoverage() {
+        final ChunkSnapshotGroup group = MeshTestSupport.createGroup(new BlockGenerator() {
+            @Override
+            public boolean isSolid(int x, int y, int z) {
+                return y < 20 + (x * 7 + z * 3) % 5;
+            }
+        });
+        assertSameCoverage(group);
+        // Merging should greatly reduce the number of faces for smooth terrain
+        final int standard = MeshTestSupport.mesh(new StandardChunkMesher(), group).getIndices().size();
+        final int greedy = MeshTestSupport.mesh(new GreedyChunkMesher(), group).getIndices().size();
+        Assert.assertTrue("Greedy mesh isn't smaller: " + greedy + " >= " + standard, greedy < standard);
+    }
+
+    @Test
+    public void testSolidChunkCoverage() {
+        final ChunkSnapshotGroup group = MeshTestSupport.createGroup(new BlockGenerator() {
+            @Override
+            public boolean isSolid(int x, int y, int z) {
+                return y < 32;
+            }
+        });
+        assertSameCoverage(group);
+        // The chunk and its neighbours are solid except above, so only the top face is visible, as a single quad
+        Assert.assertEquals(6, MeshTestSupport.mesh(new GreedyChunkMesher(), group).getIndices().size());
+    }
+
+    @Test
+    public void testDetailLevelCoverage() {
+        final BlockGenerator terrain = new BlockGenerator() {
+            @Override
+            public boolean isSolid(int x, int y, int z) {
+                return y < 20 + (x * 7 + z * 3) % 5;
+            }
+        };
+        for (int level = 1; level <= 2; level++) {
+            assertSameCoverage(MeshTestSupport.createGroup(terrain, level));
+        }
+    }
+
+    private static void assertSameCoverage(ChunkSnapshotGroup group) {
+        final Set<String> standard = getUnitFaces(MeshTestSupport.mesh(new StandardChunkMesher(), group));
+        final Set<String> greedy = getUnitFaces(MeshTestSupport.mesh(new GreedyChunkMesher(), group));
+        Assert.assertFalse(standard.isEmpty());
+        Assert.assertEquals(standard, greedy);
+    }
+
+    // Splits each quad of the mesh into the unit faces it covers, identified by the axis, plane, cell and facing direction
+    private static Set<String> getUnitFaces(PackedChunkMesh mesh) {
+        final TIntList indices = mesh.getIndices();
+        final Set<String> faces = new HashSet<>();
+        for (int i = 0; i < indices.size(); i += 6) {
+            final Vector3f p0 = getPosition(mesh, indices.get(i));
+            final Vector3f p1 = getPosition(mesh, indices.get(i + 1));
+            final Vector3f p2 = getPosition(mesh, indices.get(i + 2));
+            final Vector3f normal = p1.sub(p0).cross(p2.sub(p0));
+            final Vector3f min = p0.min(p1).min(p2).min(getPosition(mesh, indices.get(i + 4))).min(getPosition(mesh, indices.get(i + 5)));
+            final Vector3f max = p0.max(p1).max(p2).max(getPosition(mesh, indices.get(i + 4))).max(getPosition(mesh, indices.get(i + 5)));
+            final int axis = normal.getX() != 0 ? 0 : normal.getY() != 0 ? 1 : 2;
+            final int sign = normal.toArray()[axis] > 0 ? 1 : -1;
+            final Vector3i from = min.toInt();
+            final Vector3i to = max.toInt();
+            for (int x = from.getX(); x < Math.max(to.getX(), from.getX() + 1); x++) {
+                for (int y = from.getY(); y < Math.max(to.getY(), from.getY() + 1); y++) {
+                    for (int z = from.getZ(); z < Math.max(to.getZ(), from.getZ() + 1); z++) {
+                        final boolean added = faces.add(axis + " " + x + " " + y + " " + z + " " + sign);
+                        Assert.assertTrue("Overlapping faces", added);
+                    }
+                }
+            }
+        }
+        return faces;
+    }
+
+    private static Vector3f getPosition(PackedChunkMesh mesh, int index) {
+        return mesh.getPosition(index).toFloat();
+    }
+}
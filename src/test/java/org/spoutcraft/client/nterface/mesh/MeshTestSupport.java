@@ -0,0 +1,84 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import org.spoutcraft.client.universe.block.material.Materials;
+import org.spoutcraft.client.universe.snapshot.WorldSnapshot;
+import org.spoutcraft.client.universe.world.Chunk;
+import org.spoutcraft.client.universe.world.World;
+
+/**
+ * Builds the chunk snapshot groups meshed by the mesh tests and benchmarks: the chunk at (0, 1, 0) with all its neighbours, filled by a {@link
+ * org.spoutcraft.client.nterface.mesh.MeshTestSupport.BlockGenerator}.
+ */
+final class MeshTestSupport {
+    private MeshTestSupport() {
+    }
+
+    static ChunkSnapshotGroup createGroup(BlockGenerator generator) {
+        return createGroup(generator, 0);
+    }
+
+    static ChunkSnapshotGroup createGroup(BlockGenerator generator, int detailLevel) {
+        final World world = new World("test");
+        for (int cx = -1; cx <= 1; cx++) {
+            for (int cy = 0; cy <= 2; cy++) {
+                for (int cz = -1; cz <= 1; cz++) {
+                    final short[] blockIDs = new short[Chunk.BLOCKS.VOLUME];
+                    for (int x = 0; x < Chunk.BLOCKS.SIZE; x++) {
+                        for (int y = 0; y < Chunk.BLOCKS.SIZE; y++) {
+                            for (int z = 0; z < Chunk.BLOCKS.SIZE; z++) {
+                                final int wx = cx * Chunk.BLOCKS.SIZE + x;
+                                final int wy = cy * Chunk.BLOCKS.SIZE + y;
+                                final int wz = cz * Chunk.BLOCKS.SIZE + z;
+                                if (generator.isSolid(wx, wy, wz)) {
+                                    blockIDs[y << Chunk.BLOCKS.DOUBLE_BITS | z << Chunk.BLOCKS.BITS | x] = Materials.SOLID.getID();
+                                }
+                            }
+                        }
+                    }
+                    world.setChunk(new Chunk(world, new Vector3i(cx, cy, cz), blockIDs, new short[Chunk.BLOCKS.VOLUME]));
+                }
+            }
+        }
+        final WorldSnapshot snapshot = new WorldSnapshot(world);
+        snapshot.update(world);
+        return new ChunkSnapshotGroup(snapshot.getChunk(0, 1, 0), detailLevel);
+    }
+
+    static PackedChunkMesh mesh(ChunkMesher mesher, ChunkSnapshotGroup group) {
+        final ChunkMeshBuffers buffers = new ChunkMeshBuffers();
+        mesher.mesh(group, buffers);
+        return buffers.getMesh();
+    }
+
+    /**
+     * Decides which blocks are solid, using world block coordinates.
+     */
+    static interface BlockGenerator {
+        boolean isSolid(int x, int y, int z);
+    }
+}
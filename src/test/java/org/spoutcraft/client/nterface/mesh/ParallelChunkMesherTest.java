@@ -0,0 +1,57 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spoutcraft.client.universe.block.material.Materials;
+import org.spoutcraft.client.universe.snapshot.WorldSnapshot;
+import org.spoutcraft.client.universe.world.Chunk;
+import org.spoutcraft.client.universe.world.World;
+
+/**
+ * Tests the meshing engines of the {@link org.spoutcraft.client.nterface.mesh.ParallelChunkMesher}.
+ */
+public class ParallelChunkMesherTest {
+    @Test
+    public void testCallerRuns() {
+        final World world = new World("test");
+        final Chunk chunk = new Chunk(world, new Vector3i(0, 0, 0));
+        chunk.setMaterial(1, 1, 1, Materials.SOLID);
+        world.setChunk(chunk);
+        final WorldSnapshot snapshot = new WorldSnapshot(world);
+        snapshot.update(world);
+        final ParallelChunkMesher mesher = new ParallelChunkMesher(null, new StandardChunkMesher(), ChunkMeshEngine.CALLER_RUNS, 1);
+        // The chunk is meshed during the call
+        mesher.queue(snapshot.getChunk(0, 0, 0));
+        Assert.assertEquals(0, mesher.getPendingCount());
+        Assert.assertEquals(1, mesher.getMeshedCount());
+        mesher.queue(snapshot.getChunk(0, 0, 0));
+        Assert.assertEquals(2, mesher.getMeshedCount());
+        mesher.shutdown();
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.render;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the reuse and the byte limit of the {@link org.spoutcraft.client.nterface.render.BoundedResourcePool}.
+ */
+public class BoundedResourcePoolTest {
+    @Test
+    public void testReuse() {
+        final FakeContext context = new FakeContext();
+        final BoundedResourcePool<Buffer> pool = new BoundedResourcePool<>(context, 4096);
+        final Buffer first = pool.borrow(1000);
+        final Buffer second = pool.borrow(1000);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(2, pool.getBorrowedCount());
+        pool.release(first);
+        Assert.assertEquals(1, pool.getPooledCount());
+        Assert.assertEquals(1000, pool.getPooledBytes());
+        // Reused whatever the size, the data is replaced
+        Assert.assertSame(first, pool.borrow(100));
+        Assert.assertEquals(0, pool.getPooledBytes());
+        Assert.assertNotSame(first, pool.borrow(100));
+        Assert.assertEquals(3, context.allocated.size());
+        Assert.assertEquals(1, pool.getReusedCount());
+        Assert.assertEquals(3, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void testLimit() {
+        final FakeContext context = new FakeContext();
+        final BoundedResourcePool<Buffer> pool = new BoundedResourcePool<>(context, 2048);
+        final List<Buffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            buffers.add(pool.borrow(1000));
+        }
+        final Buffer large = pool.borrow(4096);
+        for (Buffer buffer : buffers) {
+            pool.release(buffer);
+        }
+        // Only two fit in the bytes of the pool, the extra one is freed
+        Assert.assertEquals(2, pool.getPooledCount());
+        Assert.assertEquals(2000, pool.getPooledBytes());
+        Assert.assertEquals(1, context.freed.size());
+        // Too large to ever be kept
+        pool.release(large);
+        Assert.assertEquals(2, context.freed.size());
+        pool.clear();
+        Assert.assertEquals(0, pool.getPooledCount());
+        Assert.assertEquals(0, pool.getPooledBytes());
+        Assert.assertEquals(4, context.freed.size());
+        try {
+            pool.release(buffers.get(0));
+            Assert.fail("Released a resource twice");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void testClear() {
+        final FakeContext context = new FakeContext();
+        final BoundedResourcePool<Buffer> pool = new BoundedResourcePool<>(context, 2048);
+        final Buffer pooled = pool.borrow(100);
+        final Buffer borrowed = pool.borrow(100);
+        pool.release(pooled);
+        // Clearing frees everything, including what's still borrowed
+        pool.clear();
+        Assert.assertEquals(0, pool.getBorrowedCount());
+        Assert.assertTrue(context.freed.contains(pooled));
+        Assert.assertTrue(context.freed.contains(borrowed));
+        try {
+            pool.release(borrowed);
+            Assert.fail("Released a resource after clearing");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    // Stands in for the rendering context and the GPU buffers it creates
+    private static class FakeContext implements BoundedResourcePool.Allocator<Buffer> {
+        private final List<Buffer> allocated = new ArrayList<>();
+        private final List<Buffer> freed = new ArrayList<>();
+
+        @Override
+        public Buffer allocate() {
+            final Buffer buffer = new Buffer();
+            allocated.add(buffer);
+            return buffer;
+        }
+
+        @Override
+        public void free(Buffer buffer) {
+            Assert.assertFalse("Freed twice", freed.contains(buffer));
+            freed.add(buffer);
+        }
+    }
+
+    private static class Buffer {
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.render;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the percentiles of the {@link org.spoutcraft.client.nterface.render.TickTimeRecorder}.
+ */
+public class TickTimeRecorderTest {
+    @Test
+    public void testPercentiles() {
+        final TickTimeRecorder recorder = new TickTimeRecorder();
+        Assert.assertEquals(0, recorder.getPercentile(50));
+        // 1 to 100, in a shuffled order, with the spike last
+        for (int i = 0; i < 99; i++) {
+            recorder.record((i * 37) % 99 + 1);
+        }
+        recorder.record(100);
+        Assert.assertEquals(100, recorder.getCount());
+        Assert.assertEquals(50, recorder.getPercentile(50));
+        Assert.assertEquals(95, recorder.getPercentile(95));
+        Assert.assertEquals(100, recorder.getPercentile(100));
+        Assert.assertEquals(1, recorder.getPercentile(0));
+        recorder.reset();
+        Assert.assertEquals(0, recorder.getCount());
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.block.material;
+
+import java.util.Random;
+
+import gnu.trove.map.TShortObjectMap;
+import gnu.trove.map.hash.TShortObjectHashMap;
+
+import org.spoutcraft.client.universe.block.BlockFace;
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ * Compares resolving materials and their visibility through the registry hash maps, which is what {@link Material#get(short, short)} used to do, against the dense {@link
+ * org.spoutcraft.client.universe.block.material.MaterialTable}. Registers a material set close to the vanilla one in size, with a few sub-materials. Run the main method, the first rounds are warm
+ * up.
+ */
+public class MaterialLookupBenchmark {
+    private static final int MATERIAL_COUNT = 176;
+    private static final int SUB_MATERIAL_COUNT = 16;
+    private static final int BLOCKS = Chunk.BLOCKS.VOLUME * 64;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        final TShortObjectMap<MasterMaterial> masters = new TShortObjectHashMap<>();
+        masters.put(Materials.AIR.getID(), Materials.AIR);
+        masters.put(Materials.SOLID.getID(), Materials.SOLID);
+        for (short id = 2; id < MATERIAL_COUNT; id++) {
+            final BasicMaterial material = new BasicMaterial(id, (id & 3) != 0);
+            masters.put(id, material);
+            // Give some materials sub-materials, like wool or wood
+            if (id % 16 == 0) {
+                for (short subID = 1; subID < SUB_MATERIAL_COUNT; subID++) {
+                    new TestSubMaterial(material, subID);
+                }
+            }
+        }
+        final Random random = new Random(42);
+        final short[] blockIDs = new short[BLOCKS];
+        final short[] blockData = new short[BLOCKS];
+        for (int i = 0; i < BLOCKS; i++) {
+            blockIDs[i] = (short) random.nextInt(MATERIAL_COUNT + 8);
+            blockData[i] = (short) (random.nextInt(SUB_MATERIAL_COUNT) << 8 | random.nextInt(256));
+        }
+        final MaterialTable table = Material.getTable();
+        for (int round = 0; round < ROUNDS; round++) {
+            int hashedCount = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < BLOCKS; i++) {
+                if (getHashed(masters, blockIDs[i], Chunk.SUB_ID_MASK.extract(blockData[i])).isVisible()) {
+                    hashedCount++;
+                }
+            }
+            final double hashed = (System.nanoTime() - start) / (double) BLOCKS;
+            int tableCount = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < BLOCKS; i++) {
+                if (table.get(blockIDs[i], Chunk.SUB_ID_MASK.extract(blockData[i])).isVisible()) {
+                    tableCount++;
+                }
+            }
+            final double lookup = (System.nanoTime() - start) / (double) BLOCKS;
+            int flagCount = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < BLOCKS; i++) {
+                if (table.isVisible(blockIDs[i], Chunk.SUB_ID_MASK.extract(blockData[i]))) {
+                    flagCount++;
+                }
+            }
+            final double flag = (System.nanoTime() - start) / (double) BLOCKS;
+            if (hashedCount != tableCount || tableCount != flagCount) {
+                throw new IllegalStateException("Lookups disagree: " + hashedCount + ", " + tableCount + ", " + flagCount);
+            }
+            System.out.printf("Round %d: hashed %.2f ns, table %.2f ns, visible bit set %.2f ns per block%n", round, hashed, lookup, flag);
+        }
+    }
+
+    private static Material getHashed(TShortObjectMap<MasterMaterial> masters, short id, short subID) {
+        final MasterMaterial master = masters.get(id);
+        if (master == null) {
+            return Materials.AIR;
+        }
+        if (subID == 0) {
+            return master;
+        }
+        final SubMaterial sub = master.getSubMaterial(subID);
+        if (sub == null) {
+            return master;
+        }
+        return sub;
+    }
+
+    private static class TestSubMaterial extends SubMaterial {
+        private TestSubMaterial(MasterMaterial master, short subID) {
+            super(master, subID);
+        }
+
+        @Override
+        public boolean isVisible() {
+            return getMaster().isVisible();
+        }
+
+        @Override
+        public boolean isOpaque() {
+            return getMaster().isOpaque();
+        }
+
+        @Override
+        public boolean occludes(Material material, BlockFace direction) {
+            return isOpaque();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.block.material;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spoutcraft.client.universe.block.BlockFace;
+import org.spoutcraft.client.universe.block.BlockFaces;
+
+/**
+ * Tests the lookups, flags, occlusion and faces of the {@link org.spoutcraft.client.universe.block.material.MaterialTable}, and its rebuilding when materials are registered.
+ */
+public class MaterialTableTest {
+    // IDs not used by the default materials
+    private static final Glass GLASS = new Glass((short) 100);
+    private static final Slab SLAB = new Slab((short) 101);
+
+    @Test
+    public void testFlags() {
+        final MaterialTable table = Material.getTable();
+        final int air = getIndex(table, Materials.AIR);
+        final int solid = getIndex(table, Materials.SOLID);
+        final int glass = getIndex(table, GLASS);
+        Assert.assertFalse(table.isVisible(air));
+        Assert.assertFalse(table.isOpaque(air));
+        Assert.assertTrue(table.isVisible(solid));
+        Assert.assertTrue(table.isOpaque(solid));
+        Assert.assertTrue(table.isVisible(glass));
+        Assert.assertFalse(table.isOpaque(glass));
+        Assert.assertTrue(table.isVisible(GLASS.getID(), (short) 0));
+        Assert.assertFalse(table.isOpaque(GLASS.getID(), (short) 0));
+    }
+
+    @Test
+    public void testOcclusion() {
+        final MaterialTable table = Material.getTable();
+        final int air = getIndex(table, Materials.AIR);
+        final int solid = getIndex(table, Materials.SOLID);
+        final int glass = getIndex(table, GLASS);
+        final int slab = getIndex(table, SLAB);
+        for (BlockFace face : new BlockFace[]{BlockFace.TOP, BlockFace.BOTTOM, BlockFace.NORTH, BlockFace.SOUTH, BlockFace.EAST, BlockFace.WEST}) {
+            // Every pair and face must match the materials
+            for (Material first : new Material[]{Materials.AIR, Materials.SOLID, GLASS, SLAB}) {
+                for (Material second : new Material[]{Materials.AIR, Materials.SOLID, GLASS, SLAB}) {
+                    Assert.assertEquals(first + " on " + second + " " + face, first.occludes(second, face), table.occludes(getIndex(table, first), getIndex(table, second), face));
+                }
+            }
+            Assert.assertTrue(table.occludes(solid, glass, face));
+            Assert.assertFalse(table.occludes(glass, solid, face));
+            Assert.assertTrue(table.occludes(glass, glass, face));
+            Assert.assertFalse(table.occludes(air, solid, face));
+        }
+        // The slab only covers the top face of what's below it
+        Assert.assertTrue(table.occludes(slab, solid, BlockFace.TOP));
+        Assert.assertFalse(table.occludes(slab, solid, BlockFace.BOTTOM));
+        Assert.assertFalse(table.occludes(slab, solid, BlockFace.NORTH));
+    }
+
+    @Test
+    public void testInvalidation() {
+        final MaterialTable before = Material.getTable();
+        Assert.assertSame(before, Material.getTable());
+        final BasicMaterial added = new BasicMaterial((short) 102, true);
+        final MaterialTable after = Material.getTable();
+        Assert.assertNotSame(before, after);
+        Assert.assertSame(Materials.AIR, before.get(added.getID(), (short) 0));
+        Assert.assertSame(added, after.get(added.getID(), (short) 0));
+        Assert.assertEquals(before.getMaterialCount() + 1, after.getMaterialCount());
+        // Adding a sub-material invalidates the table too
+        final SubMaterial sub = new SubMaterial(GLASS, (short) 1) {
+            @Override
+            public boolean isVisible() {
+                return false;
+            }
+
+            @Override
+            public boolean isOpaque() {
+                return false;
+            }
+
+            @Override
+            public boolean occludes(Material material, BlockFace direction) {
+                return false;
+            }
+        };
+        final MaterialTable withSub = Material.getTable();
+        Assert.assertNotSame(after, withSub);
+        Assert.assertSame(sub, withSub.get(GLASS.getID(), (short) 1));
+        Assert.assertFalse(withSub.isVisible(GLASS.getID(), (short) 1));
+        Assert.assertTrue(withSub.isVisible(GLASS.getID(), (short) 0));
+    }
+
+    @Test
+    public void testFaces() {
+        final MaterialTable table = Material.getTable();
+        final int air = getIndex(table, Materials.AIR);
+        final int solid = getIndex(table, Materials.SOLID);
+        final int glass = getIndex(table, GLASS);
+        // The drawn face belongs to the visible material and faces the other one
+        Assert.assertSame(BlockFace.TOP, table.getFace(solid, air, BlockFaces.BT));
+        Assert.assertSame(BlockFace.BOTTOM, table.getFace(air, solid, BlockFaces.BT));
+        Assert.assertSame(BlockFace.SOUTH, table.getFace(solid, air, BlockFaces.NS));
+        Assert.assertNull(table.getFace(air, air, BlockFaces.BT));
+        Assert.assertNull(table.getFace(solid, solid, BlockFaces.EW));
+        Assert.assertNull(table.getFace(glass, glass, BlockFaces.EW));
+        // The solid face is drawn behind the glass, but the glass face is hidden by the solid
+        Assert.assertSame(BlockFace.TOP, table.getFace(solid, glass, BlockFaces.BT));
+        Assert.assertSame(BlockFace.BOTTOM, table.getFace(glass, solid, BlockFaces.BT));
+    }
+
+    @Test
+    public void testUnknownIDs() {
+        final MaterialTable table = Material.getTable();
+        final int air = table.getIndex(Materials.AIR.getID(), (short) 0);
+        // Negative IDs and IDs past the last registered one are unknown, so air
+        Assert.assertEquals(air, table.getIndex((short) -1, (short) 0));
+        Assert.assertEquals(air, table.getIndex(Short.MIN_VALUE, (short) 255));
+        Assert.assertEquals(air, table.getIndex(Short.MAX_VALUE, (short) 0));
+        Assert.assertSame(Materials.AIR, Material.get((short) -1, (short) 0));
+        Assert.assertSame(Materials.AIR, Material.get(Short.MAX_VALUE));
+        // Unknown sub-IDs resolve to the master
+        Assert.assertSame(Materials.SOLID, Material.get(Materials.SOLID.getID(), (short) 200));
+    }
+
+    private static int getIndex(MaterialTable table, Material material) {
+        return table.getIndex(material.getID(), material.getSubID());
+    }
+
+    // Visible but lets light through, only hides the faces of the same glass
+    private static class Glass extends MasterMaterial {
+        private Glass(short id) {
+            super(id);
+        }
+
+        @Override
+        public boolean isVisible() {
+            return true;
+        }
+
+        @Override
+        public boolean isOpaque() {
+            return false;
+        }
+
+        @Override
+        public boolean occludes(Material material, BlockFace direction) {
+            return material == this;
+        }
+    }
+
+    // A bottom half block, which only hides the top face of the block below
+    private static class Slab extends MasterMaterial {
+        private Slab(short id) {
+            super(id);
+        }
+
+        @Override
+        public boolean isVisible() {
+            return true;
+        }
+
+        @Override
+        public boolean isOpaque() {
+            return false;
+        }
+
+        @Override
+        public boolean occludes(Material material, BlockFace direction) {
+            return direction == BlockFace.TOP;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.decode;
+
+import java.util.Random;
+
+import org.spoutcraft.client.universe.world.World;
+
+/**
+ * Measures the number of sections per second decoded into chunks by {@link org.spoutcraft.client.universe.decode.ParallelChunkDecoder#populateChunks(org.spoutcraft.client.universe.world.World, int,
+ * int, ChunkSectionDecoder)} for a full 16 section column, and by {@link org.spoutcraft.client.universe.decode.ChunkSectionDecoder#decodeSection(int)} alone. Run the main method, the first rounds
+ * are warm up.
+ */
+public class ChunkColumnDecodeBenchmark {
+    private static final short FULL_COLUMN = (short) 0xFFFF;
+    private static final int ROUNDS = 10;
+    private static final int COLUMNS_PER_ROUND = 2000;
+
+    public static void main(String[] args) {
+        final byte[] data = new byte[ChunkSectionDecoder.getColumnLength(FULL_COLUMN, (short) 0, true, true)];
+        new Random(42).nextBytes(data);
+        final World world = new World("benchmark");
+        final ChunkSectionDecoder decoder = new ChunkSectionDecoder();
+        int sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            final long start = System.nanoTime();
+            for (int i = 0; i < COLUMNS_PER_ROUND; i++) {
+                decoder.setColumn(data, 0, FULL_COLUMN, (short) 0, true);
+                sink += ParallelChunkDecoder.populateChunks(world, i, 0, decoder).size();
+            }
+            final long elapsed = System.nanoTime() - start;
+            final double sectionsPerSecond = COLUMNS_PER_ROUND * (double) ParallelChunkDecoder.MAX_CHUNK_COLUMN_SECTIONS / (elapsed / 1e9);
+            final long decodeStart = System.nanoTime();
+            for (int i = 0; i < COLUMNS_PER_ROUND; i++) {
+                decoder.setColumn(data, 0, FULL_COLUMN, (short) 0, true);
+                for (int section = 0; section < ParallelChunkDecoder.MAX_CHUNK_COLUMN_SECTIONS; section++) {
+                    decoder.decodeSection(section);
+                    sink += decoder.getBlockData()[section];
+                }
+            }
+            final long decodeElapsed = System.nanoTime() - decodeStart;
+            final double decodedPerSecond = COLUMNS_PER_ROUND * (double) ParallelChunkDecoder.MAX_CHUNK_COLUMN_SECTIONS / (decodeElapsed / 1e9);
+            System.out.printf("Round %d: %.0f sections/s into chunks, %.0f sections/s decoded%n", round, sectionsPerSecond, decodedPerSecond);
+        }
+        System.out.println("Checksum " + sink);
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.decode;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link org.spoutcraft.client.universe.decode.ChunkInflater} with heap and direct input, and its recovery from bad input.
+ */
+public class ChunkInflaterTest {
+    // Random data doesn't compress, so the input spans several of the 8K windows used for direct buffers
+    private static final int LENGTH = 40000;
+
+    @Test
+    public void testHeapAndDirectInput() throws IOException {
+        final byte[] data = createData(1);
+        final byte[] compressed = compress(data);
+        final ChunkInflater inflater = new ChunkInflater();
+
+        final ByteBuf heap = Unpooled.wrappedBuffer(compressed);
+        Assert.assertTrue(heap.hasArray());
+        assertInflated(data, inflater.inflate(heap, LENGTH));
+        Assert.assertEquals(0, heap.readerIndex());
+
+        final ByteBuf direct = Unpooled.directBuffer(compressed.length);
+        direct.writeBytes(compressed);
+        Assert.assertFalse(direct.hasArray());
+        assertInflated(data, inflater.inflate(direct, LENGTH));
+        Assert.assertEquals(0, direct.readerIndex());
+        direct.release();
+
+        // Heap data that doesn't start at the beginning of its backing array
+        final byte[] padded = new byte[compressed.length + 10];
+        System.arraycopy(compressed, 0, padded, 7, compressed.length);
+        final ByteBuf slice = Unpooled.wrappedBuffer(padded).slice(7, compressed.length);
+        assertInflated(data, inflater.inflate(slice, LENGTH));
+    }
+
+    @Test
+    public void testBadInput() throws IOException {
+        final byte[] data = createData(2);
+        final byte[] compressed = compress(data);
+        final ChunkInflater inflater = new ChunkInflater();
+        final byte[] corrupted = compressed.clone();
+        for (int i = 2; i < 64; i++) {
+            corrupted[i] ^= 0x5A;
+        }
+        final byte[][] inputs = {Arrays.copyOf(compressed, compressed.length / 2), corrupted};
+        for (byte[] input : inputs) {
+            for (boolean direct : new boolean[]{false, true}) {
+                final ByteBuf buffer = direct ? Unpooled.directBuffer(input.length).writeBytes(input) : Unpooled.wrappedBuffer(input);
+                try {
+                    inflater.inflate(buffer, LENGTH);
+                    Assert.fail("Inflated bad input");
+                } catch (IOException ignored) {
+                }
+                // The thread's inflater has been reset, and the output buffer returned to the pool, so the next inflation is correct
+                final byte[] first = inflater.inflate(Unpooled.wrappedBuffer(compressed), LENGTH);
+                assertInflated(data, first);
+                // The output buffer was only released once, so the pool doesn't hand it out twice
+                final byte[] second = inflater.inflate(Unpooled.wrappedBuffer(compressed), LENGTH);
+                Assert.assertNotSame(first, second);
+                assertInflated(data, second);
+                inflater.release(first);
+                inflater.release(second);
+            }
+        }
+        // Asking for more than the data holds is also an error
+        try {
+            inflater.inflate(Unpooled.wrappedBuffer(compressed), LENGTH + 1);
+            Assert.fail("Inflated more than the data");
+        } catch (IOException ignored) {
+        }
+        assertInflated(data, inflater.inflate(Unpooled.wrappedBuffer(compressed), LENGTH));
+    }
+
+    private static byte[] createData(long seed) {
+        final byte[] data = new byte[LENGTH];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] compress(byte[] data) {
+        final Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        final byte[] compressed = new byte[data.length * 2];
+        final int length = deflater.deflate(compressed);
+        deflater.end();
+        return Arrays.copyOf(compressed, length);
+    }
+
+    private static void assertInflated(byte[] expected, byte[] inflated) {
+        // The pooled buffer can be longer, the extra bytes are garbage
+        Assert.assertTrue(inflated.length >= expected.length);
+        Assert.assertArrayEquals(expected, Arrays.copyOf(inflated, expected.length));
+    }
+}
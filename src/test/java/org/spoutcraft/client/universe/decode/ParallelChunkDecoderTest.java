@@ -0,0 +1,126 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.decode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spoutcraft.client.network.message.play.ChunkDataMessage;
+import org.spoutcraft.client.universe.block.material.Materials;
+import org.spoutcraft.client.universe.world.Chunk;
+import org.spoutcraft.client.universe.world.World;
+
+/**
+ *
+ */
+public class ParallelChunkDecoderTest {
+    private static final short PRIMARY_BIT_MAP = (short) (1 | 1 << 5 | 1 << 15);
+    private static final int SECTION_COUNT = 3;
+
+    @Test
+    public void testPopulateChunks() {
+        final World world = new World("test");
+        final byte[] data = new byte[ChunkSectionDecoder.getColumnLength(PRIMARY_BIT_MAP, (short) 0, true, true)];
+        // Block (1, 2, 3) of the second section (5) is solid, with metadata 7, block light 9 and sky light 12
+        final int block = 2 << 8 | 3 << 4 | 1;
+        data[Chunk.BLOCKS.VOLUME + block] = 4;
+        final int halfArrays = SECTION_COUNT * Chunk.BLOCKS.VOLUME + Chunk.BLOCKS.HALF_VOLUME + block / 2;
+        data[halfArrays] = 7 << 4;
+        data[halfArrays + SECTION_COUNT * Chunk.BLOCKS.HALF_VOLUME] = (byte) (9 << 4);
+        data[halfArrays + 2 * SECTION_COUNT * Chunk.BLOCKS.HALF_VOLUME] = (byte) (12 << 4);
+        final ChunkSectionDecoder decoder = new ChunkSectionDecoder();
+        decoder.setColumn(data, 0, PRIMARY_BIT_MAP, (short) 0, true);
+        final List<Chunk> chunks = ParallelChunkDecoder.populateChunks(world, 3, -7, decoder);
+
+        Assert.assertEquals(SECTION_COUNT, chunks.size());
+        Assert.assertEquals(new Vector3i(3, 0, -7), chunks.get(0).getPosition());
+        Assert.assertEquals(new Vector3i(3, 5, -7), chunks.get(1).getPosition());
+        Assert.assertEquals(new Vector3i(3, 15, -7), chunks.get(2).getPosition());
+
+        final Chunk chunk = chunks.get(1);
+        Assert.assertEquals(Materials.SOLID.getID(), chunk.getMaterial(1, 2, 3).getID());
+        Assert.assertEquals(Materials.AIR, chunk.getMaterial(0, 2, 3));
+        Assert.assertEquals(Materials.AIR, chunks.get(0).getMaterial(1, 2, 3));
+        Assert.assertEquals(7, Chunk.SUB_ID_MASK.extract((short) chunk.getBlocks().getFullData(1, 2, 3)));
+        Assert.assertEquals(9, chunk.getBlockLight(1, 2, 3));
+        Assert.assertEquals(12, chunk.getBlockSkyLight(1, 2, 3));
+        Assert.assertEquals(0, chunk.getBlockLight(0, 2, 3));
+    }
+
+    @Test
+    public void testExpandHalfBytes() {
+        final byte[] data = new byte[ChunkSectionDecoder.getColumnLength(PRIMARY_BIT_MAP, (short) 0, true, true)];
+        new Random(42).nextBytes(data);
+        final ChunkSectionDecoder decoder = new ChunkSectionDecoder();
+        decoder.setColumn(data, 0, PRIMARY_BIT_MAP, (short) 0, true);
+        decoder.decodeSection(5);
+        final short[] blockData = decoder.getBlockData();
+        // Every block of the second section, half bytes read one at a time
+        final int metadataOffset = SECTION_COUNT * Chunk.BLOCKS.VOLUME + Chunk.BLOCKS.HALF_VOLUME;
+        for (int i = 0; i < Chunk.BLOCKS.VOLUME; i++) {
+            final int shift = (i & 1) * 4;
+            final int metadata = data[metadataOffset + i / 2] >> shift & 0xF;
+            final int light = data[metadataOffset + SECTION_COUNT * Chunk.BLOCKS.HALF_VOLUME + i / 2] >> shift & 0xF;
+            final int skyLight = data[metadataOffset + 2 * SECTION_COUNT * Chunk.BLOCKS.HALF_VOLUME + i / 2] >> shift & 0xF;
+            Assert.assertEquals("Block " + i, metadata << 8 | light << 4 | skyLight, blockData[i]);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testShutdownReleasesData() throws InterruptedException {
+        final World world = new World("test");
+        final short primaryBitMap = (short) 0xFFFF;
+        final int length = ChunkSectionDecoder.getColumnLength(primaryBitMap, (short) 0, true, true);
+        final Deflater deflater = new Deflater();
+        deflater.setInput(new byte[length]);
+        deflater.finish();
+        final byte[] compressed = new byte[length];
+        final int compressedLength = deflater.deflate(compressed);
+        deflater.end();
+        final ParallelChunkDecoder decoder = new ParallelChunkDecoder(1);
+        final List<ByteBuf> buffers = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            final ByteBuf buffer = Unpooled.copiedBuffer(compressed, 0, compressedLength);
+            buffers.add(buffer);
+            decoder.queue(world, new ChunkDataMessage(i, 0, true, primaryBitMap, (short) 0, compressedLength, buffer));
+        }
+        // Most messages are still queued, their data must be released by the shutdown, and the ones being decoded release their own
+        decoder.shutdown();
+        for (ByteBuf buffer : buffers) {
+            while (buffer.refCnt() != 0) {
+                Thread.sleep(1);
+            }
+        }
+    }
+}
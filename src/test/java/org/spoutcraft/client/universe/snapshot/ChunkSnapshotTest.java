@@ -0,0 +1,174 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.snapshot;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spoutcraft.client.universe.block.material.Materials;
+import org.spoutcraft.client.universe.world.Chunk;
+import org.spoutcraft.client.universe.world.World;
+
+/**
+ * Tests the delta updates of the {@link org.spoutcraft.client.universe.snapshot.ChunkSnapshot} from the dirty blocks of the chunk, and the isolation of the acquired versions from them.
+ */
+public class ChunkSnapshotTest {
+    private static final Vector3i POSITION = new Vector3i(0, 0, 0);
+
+    @Test
+    public void testDirtyPatching() {
+        final World world = new World("test");
+        final Chunk chunk = new Chunk(world, POSITION);
+        chunk.setMaterial(15, 15, 15, Materials.SOLID);
+        final ChunkSnapshot snapshot = new ChunkSnapshot(new WorldSnapshot(world), POSITION);
+        Assert.assertTrue(snapshot.update(chunk));
+        Assert.assertTrue(snapshot.isFullUpdate());
+        Assert.assertFalse(snapshot.update(chunk));
+        // Several rounds, so the arrays of both buffers are patched
+        for (int round = 0; round < 4; round++) {
+            chunk.setMaterial(round, 0, 0, Materials.SOLID);
+            chunk.setBlockLight(0, round + 1, 2, (short) (round + 3));
+            Assert.assertTrue(snapshot.update(chunk));
+            Assert.assertFalse(snapshot.isFullUpdate());
+            assertPositions(snapshot.getChangedBlocks(), new Vector3i(round, 0, 0), new Vector3i(0, round + 1, 2));
+            assertSameBlocks(chunk, snapshot);
+        }
+        // Changing a block back is patched too
+        chunk.setMaterial(0, 0, 0, Materials.AIR);
+        Assert.assertTrue(snapshot.update(chunk));
+        Assert.assertSame(Materials.AIR, snapshot.getMaterial(0, 0, 0));
+        assertSameBlocks(chunk, snapshot);
+    }
+
+    @Test
+    public void testDirtyOverflow() {
+        final World world = new World("test");
+        final Chunk chunk = new Chunk(world, POSITION);
+        chunk.setMaterial(15, 15, 15, Materials.SOLID);
+        final ChunkSnapshot snapshot = new ChunkSnapshot(new WorldSnapshot(world), POSITION);
+        snapshot.update(chunk);
+        // More changes than the dirty arrays can hold
+        for (int x = 0; x < Chunk.BLOCKS.SIZE; x++) {
+            chunk.setMaterial(x, 3, 4, Materials.SOLID);
+            chunk.setMaterial(x, 5, 6, Materials.SOLID);
+        }
+        Assert.assertTrue(chunk.getBlocks().isDirtyOverflow());
+        Assert.assertTrue(snapshot.update(chunk));
+        Assert.assertTrue(snapshot.isFullUpdate());
+        Assert.assertTrue(snapshot.getChangedBlocks().isEmpty());
+        Assert.assertNull(snapshot.getChangedBlocksSince(snapshot.getUpdateNumber() - 1));
+        assertSameBlocks(chunk, snapshot);
+        // Then back to delta updates
+        chunk.setMaterial(7, 7, 7, Materials.SOLID);
+        Assert.assertTrue(snapshot.update(chunk));
+        Assert.assertFalse(snapshot.isFullUpdate());
+        assertSameBlocks(chunk, snapshot);
+        // A replaced chunk is copied entirely
+        final Chunk replacement = new Chunk(world, POSITION);
+        replacement.setMaterial(1, 1, 1, Materials.SOLID);
+        Assert.assertTrue(snapshot.update(replacement));
+        Assert.assertTrue(snapshot.isFullUpdate());
+        assertSameBlocks(replacement, snapshot);
+    }
+
+    @Test
+    public void testChangedBlocksSince() {
+        final World world = new World("test");
+        final Chunk chunk = new Chunk(world, POSITION);
+        chunk.setMaterial(15, 15, 15, Materials.SOLID);
+        final ChunkSnapshot snapshot = new ChunkSnapshot(new WorldSnapshot(world), POSITION);
+        snapshot.update(chunk);
+        final long first = snapshot.getUpdateNumber();
+        // Nothing is known about the changes of a full update
+        Assert.assertNull(snapshot.getChangedBlocksSince(first - 1));
+        Assert.assertTrue(snapshot.getChangedBlocksSince(first).isEmpty());
+
+        chunk.setMaterial(1, 2, 3, Materials.SOLID);
+        chunk.setMaterial(4, 5, 6, Materials.SOLID);
+        snapshot.update(chunk);
+        final long second = snapshot.getUpdateNumber();
+        Assert.assertEquals(first + 1, second);
+        assertPositions(snapshot.getChangedBlocksSince(first), new Vector3i(1, 2, 3), new Vector3i(4, 5, 6));
+        Assert.assertTrue(snapshot.getChangedBlocksSince(second).isEmpty());
+
+        chunk.setBlockSkyLight(8, 9, 10, (short) 2);
+        snapshot.update(chunk);
+        assertPositions(snapshot.getChangedBlocksSince(second), new Vector3i(8, 9, 10));
+        // Only the last update is known
+        Assert.assertNull(snapshot.getChangedBlocksSince(first));
+    }
+
+    @Test
+    public void testAcquiredVersion() {
+        final World world = new World("test");
+        final Chunk chunk = new Chunk(world, POSITION);
+        chunk.setMaterial(15, 15, 15, Materials.SOLID);
+        final ChunkSnapshot snapshot = new ChunkSnapshot(new WorldSnapshot(world), POSITION);
+        snapshot.update(chunk);
+        final ChunkSnapshot.Version acquired = snapshot.acquireVersion();
+        final long updateNumber = acquired.getUpdateNumber();
+        // Enough updates for the acquired version to be retired and then due for reuse, it must be copied instead
+        for (int x = 0; x < 3; x++) {
+            chunk.setMaterial(x, 0, 0, Materials.SOLID);
+            snapshot.update(chunk);
+        }
+        Assert.assertEquals(updateNumber, acquired.getUpdateNumber());
+        Assert.assertFalse(acquired.isUniform());
+        Assert.assertSame(Materials.SOLID, acquired.getMaterial(15, 15, 15));
+        for (int x = 0; x < 3; x++) {
+            Assert.assertSame(Materials.AIR, acquired.getMaterial(x, 0, 0));
+        }
+        assertSameBlocks(chunk, snapshot);
+        acquired.release();
+        // Once released, the updates go back to patching the retired arrays
+        for (int x = 3; x < 6; x++) {
+            chunk.setMaterial(x, 0, 0, Materials.SOLID);
+            snapshot.update(chunk);
+            assertSameBlocks(chunk, snapshot);
+        }
+    }
+
+    private static void assertPositions(List<Vector3i> actual, Vector3i... expected) {
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(expected)), new HashSet<>(actual));
+    }
+
+    private static void assertSameBlocks(Chunk chunk, ChunkSnapshot snapshot) {
+        for (int y = 0; y < Chunk.BLOCKS.SIZE; y++) {
+            for (int z = 0; z < Chunk.BLOCKS.SIZE; z++) {
+                for (int x = 0; x < Chunk.BLOCKS.SIZE; x++) {
+                    Assert.assertSame(chunk.getMaterial(x, y, z), snapshot.getMaterial(x, y, z));
+                    Assert.assertEquals(chunk.getBlockLight(x, y, z), snapshot.getBlockLight(x, y, z));
+                    Assert.assertEquals(chunk.getBlockSkyLight(x, y, z), snapshot.getBlockSkyLight(x, y, z));
+                }
+            }
+        }
+    }
+}
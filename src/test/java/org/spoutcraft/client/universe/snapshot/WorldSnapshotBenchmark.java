@@ -0,0 +1,85 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.snapshot;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import org.spoutcraft.client.universe.block.material.Materials;
+import org.spoutcraft.client.universe.world.Chunk;
+import org.spoutcraft.client.universe.world.World;
+
+/**
+ * Measures the per tick cost of {@link org.spoutcraft.client.universe.snapshot.WorldSnapshot#update(org.spoutcraft.client.universe.world.World)} for a world with over 10 000 loaded chunks, when
+ * no chunks changed, when a few did, and when one was added or removed. Run the main method, the first rounds are warm up.
+ */
+public class WorldSnapshotBenchmark {
+    private static final int COLUMNS_SIDE = 26;
+    private static final int ROUNDS = 10;
+    private static final int TICKS_PER_ROUND = 1000;
+    private static final int CHANGES_PER_TICK = 16;
+
+    public static void main(String[] args) {
+        final World world = new World("benchmark");
+        for (int x = 0; x < COLUMNS_SIDE; x++) {
+            for (int z = 0; z < COLUMNS_SIDE; z++) {
+                for (int y = 0; y < World.CHUNK_COLUMN_HEIGHT; y++) {
+                    world.setChunk(new Chunk(world, new Vector3i(x, y, z)));
+                }
+            }
+        }
+        final WorldSnapshot snapshot = new WorldSnapshot(world);
+        long start = System.nanoTime();
+        snapshot.update(world);
+        System.out.printf("Initial update of %d chunks: %.2f ms%n", snapshot.getChunks().size(), (System.nanoTime() - start) / 1e6);
+        int block = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            start = System.nanoTime();
+            for (int tick = 0; tick < TICKS_PER_ROUND; tick++) {
+                snapshot.update(world);
+            }
+            final double idle = (System.nanoTime() - start) / (double) TICKS_PER_ROUND;
+            start = System.nanoTime();
+            for (int tick = 0; tick < TICKS_PER_ROUND; tick++) {
+                for (int i = 0; i < CHANGES_PER_TICK; i++, block++) {
+                    final Chunk chunk = world.getChunk(block % COLUMNS_SIDE, block / COLUMNS_SIDE % World.CHUNK_COLUMN_HEIGHT, block / 7 % COLUMNS_SIDE);
+                    chunk.setMaterial(block & Chunk.BLOCKS.MASK, 0, 0, (block & 1) == 0 ? Materials.SOLID : Materials.AIR);
+                }
+                snapshot.update(world);
+            }
+            final double busy = (System.nanoTime() - start) / (double) TICKS_PER_ROUND;
+            start = System.nanoTime();
+            for (int tick = 0; tick < TICKS_PER_ROUND; tick++) {
+                // A chunk just outside of the loaded area comes and goes
+                if ((tick & 1) == 0) {
+                    world.setChunk(new Chunk(world, new Vector3i(COLUMNS_SIDE, 0, 0)));
+                } else {
+                    world.removeChunk(COLUMNS_SIDE, 0, 0);
+                }
+                snapshot.update(world);
+            }
+            final double added = (System.nanoTime() - start) / (double) TICKS_PER_ROUND;
+            System.out.printf("Round %d: idle tick %.0f ns, tick with %d changes %.0f ns, tick adding or removing a chunk %.0f ns%n", round, idle, CHANGES_PER_TICK, busy, added);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.snapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spoutcraft.client.universe.block.Block;
+import org.spoutcraft.client.universe.block.material.Materials;
+import org.spoutcraft.client.universe.world.Chunk;
+import org.spoutcraft.client.universe.world.World;
+
+/**
+ *
+ */
+public class WorldSnapshotTest {
+    private static final int READERS = 4;
+    private static final int UPDATES = 20000;
+
+    @Test(timeout = 60000)
+    public void testConcurrentReadsAndUpdates() throws InterruptedException {
+        final World world = new World("test");
+        final Chunk chunk = new Chunk(world, new Vector3i(0, 0, 0));
+        world.setChunk(chunk);
+        final WorldSnapshot snapshot = new WorldSnapshot(world);
+        snapshot.update(world);
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            final Thread reader = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        long lastUpdateNumber = 0;
+                        long lastChunkUpdateNumber = 0;
+                        while (running.get()) {
+                            final long updateNumber = snapshot.getUpdateNumber();
+                            Assert.assertTrue(updateNumber >= lastUpdateNumber);
+                            lastUpdateNumber = updateNumber;
+                            final ChunkSnapshot chunkSnapshot = snapshot.getChunk(0, 0, 0);
+                            Assert.assertNotNull(chunkSnapshot);
+                            final long chunkUpdateNumber = chunkSnapshot.getUpdateNumber();
+                            Assert.assertTrue(chunkUpdateNumber >= lastChunkUpdateNumber);
+                            lastChunkUpdateNumber = chunkUpdateNumber;
+                            // Both lights are changed together, a read must never see them from different updates
+                            final Block block = chunkSnapshot.getBlock(new Vector3i(0, 0, 0));
+                            Assert.assertEquals(block.getBlockLight(), block.getBlockSkyLight());
+                            // The neighbour comes and goes, it must either be absent or fully updated
+                            final ChunkSnapshot neighbour = snapshot.getChunk(1, 0, 0);
+                            if (neighbour != null) {
+                                Assert.assertTrue(neighbour.getUpdateNumber() > 0);
+                                Assert.assertNotNull(neighbour.getMaterial(0, 0, 0));
+                            }
+                        }
+                    } catch (Throwable throwable) {
+                        failure.compareAndSet(null, throwable);
+                    }
+                }
+            };
+            readers.add(reader);
+            reader.start();
+        }
+
+        for (int i = 1; i <= UPDATES; i++) {
+            final short light = (short) (i & 0xF);
+            chunk.setBlockLight(0, 0, 0, light);
+            chunk.setBlockSkyLight(0, 0, 0, light);
+            if ((i & 1) == 0) {
+                world.setChunk(new Chunk(world, new Vector3i(1, 0, 0)));
+            } else {
+                world.removeChunk(1, 0, 0);
+            }
+            snapshot.update(world);
+        }
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        Assert.assertEquals(UPDATES & 0xF, snapshot.getChunk(0, 0, 0).getBlockLight(0, 0, 0));
+        Assert.assertTrue(snapshot.hasChunk(1, 0, 0));
+        // Each update changed something, plus the initial one
+        Assert.assertEquals(UPDATES + 1, snapshot.getUpdateNumber());
+    }
+
+    @Test
+    public void testDoubleBufferedUpdates() {
+        final World world = new World("test");
+        final WorldSnapshot snapshot = new WorldSnapshot(world);
+        final Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            // Change a few blocks of the chunks present, and add or remove chunks
+            for (Chunk chunk : world.getChunkValues()) {
+                for (int j = random.nextInt(4); j > 0; j--) {
+                    chunk.setBlockLight(random.nextInt(16), random.nextInt(16), random.nextInt(16), (short) random.nextInt(16));
+                }
+            }
+            final int x = random.nextInt(4);
+            if (world.hasChunk(x, 0, 0) && random.nextBoolean()) {
+                world.removeChunk(x, 0, 0);
+            } else if (!world.hasChunk(x, 0, 0)) {
+                final Chunk chunk = new Chunk(world, new Vector3i(x, 0, 0));
+                chunk.setMaterial(random.nextInt(16), random.nextInt(16), random.nextInt(16), Materials.SOLID);
+                world.setChunk(chunk);
+            }
+            snapshot.update(world);
+            // Every update must leave the snapshot equal to the world, whichever buffer is published
+            Assert.assertEquals(world.getChunks().keySet(), snapshot.getChunks().keySet());
+            for (Chunk chunk : world.getChunkValues()) {
+                final ChunkSnapshot chunkSnapshot = snapshot.getChunk(chunk.getPosition());
+                for (int y = 0; y < 16; y++) {
+                    for (int z = 0; z < 16; z++) {
+                        for (int bx = 0; bx < 16; bx++) {
+                            Assert.assertSame(chunk.getMaterial(bx, y, z), chunkSnapshot.getMaterial(bx, y, z));
+                            Assert.assertEquals(chunk.getBlockLight(bx, y, z), chunkSnapshot.getBlockLight(bx, y, z));
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.world;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.flowpowered.commons.hashing.Int21TripleHashed;
+import com.flowpowered.math.vector.Vector2i;
+import com.flowpowered.math.vector.Vector3i;
+
+import gnu.trove.set.TLongSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spoutcraft.client.universe.block.material.Materials;
+
+/**
+ * Tests the chunk columns and the change log of the {@link org.spoutcraft.client.universe.world.World}.
+ */
+public class WorldTest {
+    @Test
+    public void testColumnMask() {
+        final World world = new World("test");
+        final Chunk bottom = setChunk(world, 2, 0, -3);
+        final Chunk middle = setChunk(world, 2, 3, -3);
+        final Chunk top = setChunk(world, 2, 15, -3);
+        Assert.assertEquals(1 | 1 << 3 | 1 << 15, world.getChunkColumnMask(2, -3));
+        Assert.assertTrue(world.hasChunkColumn(2, -3));
+        Assert.assertFalse(world.hasChunkColumn(-3, 2));
+        Assert.assertEquals(0, world.getChunkColumnMask(-3, 2));
+        Assert.assertEquals(Collections.singletonList(new Vector2i(2, -3)), world.getChunkColumns());
+        final Chunk[] column = world.getChunkColumn(2, -3);
+        Assert.assertSame(bottom, column[0]);
+        Assert.assertSame(middle, column[3]);
+        Assert.assertSame(top, column[15]);
+        Assert.assertNull(column[1]);
+        // The column returned is a copy
+        column[1] = bottom;
+        Assert.assertNull(world.getChunk(2, 1, -3));
+
+        Assert.assertSame(middle, world.removeChunk(2, 3, -3));
+        Assert.assertNull(world.removeChunk(2, 3, -3));
+        Assert.assertEquals(1 | 1 << 15, world.getChunkColumnMask(2, -3));
+        world.removeChunkColumn(2, -3, 0, 8);
+        Assert.assertEquals(1 << 15, world.getChunkColumnMask(2, -3));
+        Assert.assertSame(top, world.getChunk(2, 15, -3));
+
+        // Replacing the column drops the chunks not in the new one
+        final Chunk replacement = new Chunk(world, new Vector3i(2, 4, -3));
+        world.setChunkColumn(2, -3, Arrays.asList(replacement));
+        Assert.assertEquals(1 << 4, world.getChunkColumnMask(2, -3));
+        Assert.assertNull(world.getChunk(2, 15, -3));
+
+        // Removing the last chunk unloads the column
+        world.removeChunk(2, 4, -3);
+        Assert.assertFalse(world.hasChunkColumn(2, -3));
+        Assert.assertNull(world.getChunkColumn(2, -3));
+        Assert.assertTrue(world.getChunkColumns().isEmpty());
+        Assert.assertTrue(world.getChunkValues().isEmpty());
+    }
+
+    @Test
+    public void testColumnBounds() {
+        final World world = new World("test");
+        for (int y : new int[]{-1, World.CHUNK_COLUMN_HEIGHT}) {
+            try {
+                setChunk(world, 0, y, 0);
+                Assert.fail("Accepted a chunk at y " + y);
+            } catch (IllegalArgumentException ignored) {
+            }
+            try {
+                world.setChunkColumn(0, 0, Arrays.asList(new Chunk(world, new Vector3i(0, y, 0))));
+                Assert.fail("Accepted a column with a chunk at y " + y);
+            } catch (IllegalArgumentException ignored) {
+            }
+            Assert.assertNull(world.getChunk(0, y, 0));
+            Assert.assertFalse(world.hasChunk(0, y, 0));
+            Assert.assertNull(world.removeChunk(0, y, 0));
+        }
+        try {
+            world.setChunkColumn(0, 0, Arrays.asList(new Chunk(world, new Vector3i(1, 0, 0))));
+            Assert.fail("Accepted a column with a chunk from another column");
+        } catch (IllegalArgumentException ignored) {
+        }
+        // Nothing was added by the rejected calls
+        Assert.assertTrue(world.getChunkColumns().isEmpty());
+        Assert.assertTrue(world.pollChunkChanges().isEmpty());
+    }
+
+    @Test
+    public void testChunkChanges() {
+        final World world = new World("test");
+        Assert.assertTrue(world.pollChunkChanges().isEmpty());
+
+        final Chunk chunk = setChunk(world, 1, 2, 3);
+        // Modified twice, logged once
+        chunk.setMaterial(0, 0, 0, Materials.SOLID);
+        chunk.setMaterial(1, 0, 0, Materials.SOLID);
+        assertChanges(world.pollChunkChanges(), 1, 2, 3);
+        Assert.assertTrue(world.pollChunkChanges().isEmpty());
+
+        chunk.setBlockLight(0, 0, 0, (short) 5);
+        setChunk(world, 1, 7, 3);
+        assertChanges(world.pollChunkChanges(), 1, 2, 3, 1, 7, 3);
+
+        // Removing something absent isn't a change
+        world.removeChunk(1, 8, 3);
+        world.removeChunkColumn(5, 5);
+        Assert.assertTrue(world.pollChunkChanges().isEmpty());
+
+        // Replacing the column logs the previous chunks and the new ones
+        world.setChunkColumn(1, 3, Arrays.asList(new Chunk(world, new Vector3i(1, 4, 3))));
+        assertChanges(world.pollChunkChanges(), 1, 2, 3, 1, 7, 3, 1, 4, 3);
+
+        world.removeChunkColumn(1, 3);
+        assertChanges(world.pollChunkChanges(), 1, 4, 3);
+        Assert.assertFalse(world.hasChunkColumn(1, 3));
+    }
+
+    private static Chunk setChunk(World world, int x, int y, int z) {
+        final Chunk chunk = new Chunk(world, new Vector3i(x, y, z));
+        Assert.assertNull(world.setChunk(chunk));
+        return chunk;
+    }
+
+    // The positions are given as x, y, z triples
+    private static void assertChanges(TLongSet changes, int... positions) {
+        Assert.assertEquals(positions.length / 3, changes.size());
+        for (int i = 0; i < positions.length; i += 3) {
+            Assert.assertTrue("Missing change at (" + positions[i] + ", " + positions[i + 1] + ", " + positions[i + 2] + ")",
+                    changes.contains(Int21TripleHashed.key(positions[i], positions[i + 1], positions[i + 2])));
+        }
+    }
+}